@@ -0,0 +1,449 @@
+
+// File:   Bench.java
+// Date:   October 2026
+
+// Benchmarks for the lexers and parsers.
+// Each workload is run repeatedly for a warm-up period, and then for a
+// number of timed iterations, on the current thread.  For each workload
+// we report throughput in MB/s of input, ns per token, and bytes
+// allocated per token, as counted by the JVM for the current thread.
+// Lexer workloads count the proper tokens delivered; parser workloads
+// work on tokens lexed beforehand, so only the parser itself is timed.
+
+// Usage:
+//    java Bench [options] [workload ...]
+// with options
+//    -quick            short runs, for a rough idea
+//    -save FILE        store the results as a baseline
+//    -check FILE       compare the results with a stored baseline, and
+//                      exit with status 1 if any has got worse
+//    -tolerance T      fraction by which a result may be worse than the
+//                      baseline before it counts as a regression (0.10)
+// Only the named workloads are run, if any are given.  Baselines are
+// specific to the machine they were made on.
+
+
+import java.io.* ;
+import java.lang.management.ManagementFactory ;
+import java.util.* ;
+
+abstract class Workload {
+
+    String name ;
+    CharSequence text ;     // the input, in memory
+
+    Workload (String name, CharSequence text) {
+        this.name = name ; this.text = text ;
+    }
+
+    abstract int run () throws Exception ;
+    // one operation on the whole input, returning the number of tokens
+}
+
+class LexerWorkload extends Workload {
+
+    MergedDFA dfa ;         // null for the demo lexer
+
+    LexerWorkload (String name, CharSequence text, MergedDFA dfa) {
+        super (name, text) ;
+        this.dfa = dfa ;
+    }
+
+    int run () throws Exception {
+        GenLexer lexer = (dfa == null)
+            ? new DemoLexer (new CharSequenceInput (text))
+            : new GenLexer (new CharSequenceInput (text), dfa) ;
+        int n = 0 ;
+        while (lexer.pullProperToken() != null) n++ ;
+        return n ;
+    }
+}
+
+class ParserWorkload extends Workload {
+
+    PARSER parser ;
+    LEX_TOKEN_STREAM lexer ;
+    List<LexToken> tokens ;   // lexed on the first run, which is a warm-up
+
+    ParserWorkload (String name, CharSequence text, PARSER parser,
+                    LEX_TOKEN_STREAM lexer) {
+        super (name, text) ;
+        this.parser = parser ;
+        this.lexer = lexer ;
+    }
+
+    int run () throws Exception {
+        if (tokens == null) {
+            tokens = new ArrayList<LexToken>() ;
+            for (LexToken tok = lexer.pullProperToken(); tok != null;
+                 tok = lexer.pullProperToken()) {
+                tokens.add (tok) ;
+            }
+        }
+        parse (new TokenListStream (tokens)) ;
+        return tokens.size() ;
+    }
+
+    void parse (LEX_TOKEN_STREAM stream) throws Exception {
+        parser.parseTokenStream (stream) ;
+    }
+}
+
+// The same, building the tree in a SyntaxArena.
+
+class ArenaParserWorkload extends ParserWorkload {
+
+    ArenaParserWorkload (String name, CharSequence text, GenParser parser,
+                         LEX_TOKEN_STREAM lexer) {
+        super (name, text, parser, lexer) ;
+    }
+
+    void parse (LEX_TOKEN_STREAM stream) throws Exception {
+        ((GenParser)parser).parseToArena (stream) ;
+    }
+}
+
+// The same, building nothing, with a listener that only counts events.
+
+class EventParserWorkload extends ParserWorkload implements PARSE_LISTENER {
+
+    long events ;
+
+    EventParserWorkload (String name, CharSequence text, PARSER parser,
+                         LEX_TOKEN_STREAM lexer) {
+        super (name, text, parser, lexer) ;
+    }
+
+    void parse (LEX_TOKEN_STREAM stream) throws Exception {
+        parser.parseTokenStream (stream, this) ;
+    }
+
+    public void enterNonterminal (String symbol, String[] rhs) {events++ ;}
+    public void terminal (String lexClass, CharSequence value) {events++ ;}
+    public void exitNonterminal (String symbol) {events++ ;}
+}
+
+
+// Lexing and parsing together, from the text each time, with the lexer
+// either on the same thread or on a thread of its own.  Only the parser's
+// thread is counted in the bytes allocated.
+
+class LexParseWorkload extends Workload {
+
+    PARSER parser ;
+    boolean pipelined ;
+
+    LexParseWorkload (String name, CharSequence text, PARSER parser,
+                      boolean pipelined) {
+        super (name, text) ;
+        this.parser = parser ;
+        this.pipelined = pipelined ;
+    }
+
+    int run () throws Exception {
+        LEX_TOKEN_STREAM lexer = new CheckedSymbolLexer (new MH_Lexer (text)) ;
+        MHBatch.CountingStream tokens ;
+        if (!pipelined) {
+            tokens = new MHBatch.CountingStream (lexer) ;
+            parser.parseTokenStream (tokens) ;
+            return (int)tokens.tokens ;
+        }
+        PipelinedLexer pipeline = new PipelinedLexer (lexer) ;
+        try {
+            tokens = new MHBatch.CountingStream (pipeline) ;
+            parser.parseTokenStream (tokens) ;
+            return (int)tokens.tokens ;
+        } finally {
+            pipeline.close() ;
+        }
+    }
+}
+
+
+class Bench {
+
+    static com.sun.management.ThreadMXBean threads =
+        (com.sun.management.ThreadMXBean)ManagementFactory.getThreadMXBean() ;
+
+    static long allocated () {
+        return threads.getThreadAllocatedBytes (Thread.currentThread().getId()) ;
+    }
+
+    // Input size and run lengths, in chars and milliseconds
+    static int size = 1 << 20 ;
+    static long warmup = 3000, iteration = 1000 ;
+    static int iterations = 5 ;
+
+    // The inputs.  All are generated from fixed seeds, so each run sees
+    // the same text.
+
+    static String comments (int size) {
+        Random r = new Random (1) ;
+        StringBuilder b = new StringBuilder () ;
+        while (b.length() < size) {
+            if (r.nextInt(10) == 0) {
+                b.append ("f x = x + 1 ;\n") ;
+            } else {
+                b.append ("--") ;
+                for (int i = r.nextInt(12); i >= 0; i--) {
+                    b.append (' ').append (word (r, 1 + r.nextInt(8))) ;
+                }
+                b.append ('\n') ;
+            }
+        }
+        return b.toString() ;
+    }
+
+    static String identifiers (int size) {
+        Random r = new Random (2) ;
+        StringBuilder b = new StringBuilder () ;
+        while (b.length() < size) {
+            b.append (word (r, 1 + r.nextInt(12))) ;
+            for (int i = r.nextInt(6); i >= 0; i--) {
+                b.append (' ').append (word (r, 1 + r.nextInt(12))) ;
+            }
+            b.append (" = ").append (word (r, 1 + r.nextInt(12))) ;
+            for (int i = r.nextInt(6); i >= 0; i--) {
+                b.append (' ').append (word (r, 1 + r.nextInt(12))) ;
+            }
+            b.append (" ;\n") ;
+        }
+        return b.toString() ;
+    }
+
+    static final String[] symbols = {"::", "->", "=", "==", "<=", "+", "-", "(", ")", ";"} ;
+
+    static String symbols (int size) {
+        Random r = new Random (3) ;
+        StringBuilder b = new StringBuilder () ;
+        while (b.length() < size) {
+            for (int i=0; i<16; i++) {
+                b.append (symbols[r.nextInt(symbols.length)]).append (' ') ;
+                if (r.nextInt(4) == 0) b.append ("x1 ") ;
+            }
+            b.append ('\n') ;
+        }
+        return b.toString() ;
+    }
+
+    static String evenAnd (int size) {
+        Random r = new Random (4) ;
+        StringBuilder b = new StringBuilder () ;
+        while (b.length() < size) {
+            for (int i = 2 * (1 + r.nextInt(4)); i > 0; i--) {
+                b.append ((char)('a' + r.nextInt(26))) ;
+            }
+            b.append (" && ") ;
+        }
+        return b.toString() ;
+    }
+
+    // A lowercase identifier, avoiding the keywords if, then and else.
+    static String word (Random r, int length) {
+        StringBuilder b = new StringBuilder () ;
+        b.append ((char)('a' + r.nextInt(26))) ;
+        for (int i=1; i<length; i++) {
+            int k = r.nextInt(36) ;
+            b.append ((char)(k < 26 ? 'a' + k : '0' + k - 26)) ;
+        }
+        String w = b.toString() ;
+        return (w.equals("if") || w.equals("then") || w.equals("else"))
+            ? w + "1" : w ;
+    }
+
+    // Micro-Haskell programs whose expressions are deeply nested or long.
+
+    static String deepExpressions (int size) {
+        StringBuilder b = new StringBuilder () ;
+        for (int k=0; b.length() < size; k++) {
+            b.append ("f" + k + " :: Integer ;\nf" + k + " = ") ;
+            for (int i=0; i<1000; i++) b.append ('(') ;
+            b.append ('1') ;
+            for (int i=0; i<1000; i++) b.append (')') ;
+            b.append (" ;\n") ;
+        }
+        return b.toString() ;
+    }
+
+    static String wideExpressions (int size) {
+        StringBuilder b = new StringBuilder () ;
+        for (int k=0; b.length() < size; k++) {
+            b.append ("f" + k + " :: Integer -> Integer ;\nf" + k + " x = x") ;
+            for (int i=0; i<1000; i++) {
+                b.append ((i % 3 == 0) ? " + " : (i % 3 == 1) ? " - x " : " ") ;
+                b.append (i) ;
+            }
+            b.append (" ;\n") ;
+        }
+        return b.toString() ;
+    }
+
+    // Deep: EVEN tokens nested inside one another.  Wide: one after another.
+
+    static String deepEvenAnd (int size) {
+        StringBuilder b = new StringBuilder () ;
+        while (b.length() < size) {
+            for (int i=0; i<1000; i++) b.append ("ab ") ;
+            for (int i=0; i<1000; i++) b.append ("&& ") ;
+        }
+        return b.toString() ;
+    }
+
+    static List<Workload> workloads () throws Exception {
+        List<Workload> all = new ArrayList<Workload>() ;
+        all.add (new LexerWorkload ("lex.mh.comments", comments(size), MH_Lexer.MHmerged)) ;
+        all.add (new LexerWorkload ("lex.mh.identifiers", identifiers(size), MH_Lexer.MHmerged)) ;
+        all.add (new LexerWorkload ("lex.mh.symbols", symbols(size), MH_Lexer.MHmerged)) ;
+        all.add (new LexerWorkload ("lex.demo", evenAnd(size), null)) ;
+        String deep = deepExpressions(size), wide = wideExpressions(size) ;
+        all.add (new ParserWorkload ("parse.mh.deep", deep, new MH_Parser(),
+                     new CheckedSymbolLexer (new MH_Lexer (deep)))) ;
+        all.add (new ParserWorkload ("parse.mh.wide", wide, new MH_Parser(),
+                     new CheckedSymbolLexer (new MH_Lexer (wide)))) ;
+        all.add (new ArenaParserWorkload ("parse.mh.deep.arena", deep, new MH_Parser(),
+                     new CheckedSymbolLexer (new MH_Lexer (deep)))) ;
+        all.add (new ArenaParserWorkload ("parse.mh.wide.arena", wide, new MH_Parser(),
+                     new CheckedSymbolLexer (new MH_Lexer (wide)))) ;
+        all.add (new EventParserWorkload ("parse.mh.deep.events", deep, new MH_Parser(),
+                     new CheckedSymbolLexer (new MH_Lexer (deep)))) ;
+        all.add (new EventParserWorkload ("parse.mh.wide.events", wide, new MH_Parser(),
+                     new CheckedSymbolLexer (new MH_Lexer (wide)))) ;
+        all.add (new LexParseWorkload ("lexparse.mh.deep", deep, new MH_Parser(), false)) ;
+        all.add (new LexParseWorkload ("pipeline.mh.deep", deep, new MH_Parser(), true)) ;
+        String evenDeep = deepEvenAnd(size), evenWide = evenAnd(size) ;
+        all.add (new ParserWorkload ("parse.even.deep", evenDeep, new EvenAndParser(),
+                     new DemoLexer (new CharSequenceInput (evenDeep)))) ;
+        all.add (new ParserWorkload ("parse.even.wide", evenWide, new EvenAndParser(),
+                     new DemoLexer (new CharSequenceInput (evenWide)))) ;
+        return all ;
+    }
+
+    // Results of one workload: MB/s, ns/token, bytes/token.
+
+    static double[] measure (Workload w) throws Exception {
+        long sink = 0 ;
+        long until = System.currentTimeMillis() + warmup ;
+        while (System.currentTimeMillis() < until) sink += w.run() ;
+        double[] mbps = new double[iterations] ;
+        double[] nsPerToken = new double[iterations] ;
+        double[] bytesPerToken = new double[iterations] ;
+        for (int i=0; i<iterations; i++) {
+            long ops = 0, tokens = 0 ;
+            long bytes = allocated() ;
+            long begun = System.nanoTime() ;
+            until = begun + iteration * 1000000 ;
+            long now ;
+            do {
+                tokens += w.run() ;
+                ops++ ;
+                now = System.nanoTime() ;
+            } while (now < until) ;
+            bytes = allocated() - bytes ;
+            mbps[i] = (double)ops * w.text.length() * 1000 / (now - begun) ;
+            nsPerToken[i] = (double)(now - begun) / tokens ;
+            bytesPerToken[i] = (double)bytes / tokens ;
+        }
+        if (sink == 42) System.err.print ("") ;   // keeps the warm-up live
+        return new double[] {median(mbps), median(nsPerToken), median(bytesPerToken)} ;
+    }
+
+    static double median (double[] xs) {
+        double[] s = xs.clone() ;
+        Arrays.sort (s) ;
+        return s[s.length / 2] ;
+    }
+
+    // Baselines are stored one workload per line: name, MB/s, ns/token
+    // and bytes/token, separated by tabs.
+
+    static Map<String,double[]> load (String fileName) throws IOException {
+        Map<String,double[]> results = new TreeMap<String,double[]>() ;
+        try (BufferedReader in = new BufferedReader (new FileReader (fileName))) {
+            for (String line = in.readLine(); line != null; line = in.readLine()) {
+                String[] f = line.split ("\t") ;
+                if (f.length < 4 || line.startsWith ("#")) continue ;
+                results.put (f[0], new double[] {Double.parseDouble(f[1]),
+                                                 Double.parseDouble(f[2]),
+                                                 Double.parseDouble(f[3])}) ;
+            }
+        }
+        return results ;
+    }
+
+    static void save (String fileName, Map<String,double[]> results)
+    throws IOException {
+        try (PrintWriter out = new PrintWriter (new FileWriter (fileName))) {
+            out.println ("# workload\tMB/s\tns/token\tbytes/token") ;
+            for (Map.Entry<String,double[]> e : results.entrySet()) {
+                double[] r = e.getValue() ;
+                out.println (e.getKey() + "\t" + r[0] + "\t" + r[1] + "\t" + r[2]) ;
+            }
+        }
+    }
+
+    // A result is a regression if its throughput has fallen, or its
+    // allocation risen, by more than the tolerance.  Half a byte per
+    // token of allocation is allowed for in any case, as the counts are
+    // not exact.
+
+    static List<String> regressions (Map<String,double[]> results,
+                                     Map<String,double[]> baseline,
+                                     double tolerance) {
+        List<String> worse = new ArrayList<String>() ;
+        for (Map.Entry<String,double[]> e : results.entrySet()) {
+            double[] now = e.getValue(), then = baseline.get (e.getKey()) ;
+            if (then == null) continue ;
+            if (now[0] < then[0] * (1 - tolerance)) {
+                worse.add (String.format ("%s: %.1f MB/s, was %.1f",
+                                          e.getKey(), now[0], then[0])) ;
+            }
+            if (now[2] > then[2] * (1 + tolerance) + 0.5) {
+                worse.add (String.format ("%s: %.1f bytes/token, was %.1f",
+                                          e.getKey(), now[2], then[2])) ;
+            }
+        }
+        return worse ;
+    }
+
+    public static void main (String[] args) throws Exception {
+        String saveFile = null, checkFile = null ;
+        double tolerance = 0.10 ;
+        Set<String> only = new HashSet<String>() ;
+        for (int i=0; i<args.length; i++) {
+            if (args[i].equals ("-quick")) {
+                size = 1 << 16 ; warmup = 500 ; iteration = 200 ; iterations = 3 ;
+            } else if (args[i].equals ("-save")) saveFile = args[++i] ;
+            else if (args[i].equals ("-check")) checkFile = args[++i] ;
+            else if (args[i].equals ("-tolerance")) {
+                tolerance = Double.parseDouble (args[++i]) ;
+            } else only.add (args[i]) ;
+        }
+        // the parsers report each parse on System.out
+        PrintStream out = System.out ;
+        System.setOut (new PrintStream (OutputStream.nullOutputStream())) ;
+        Map<String,double[]> results = new TreeMap<String,double[]>() ;
+        boolean failed = false ;
+        out.println (String.format ("%-20s %10s %10s %12s",
+                                    "workload", "MB/s", "ns/token", "bytes/token")) ;
+        for (Workload w : workloads()) {
+            if (!only.isEmpty() && !only.contains (w.name)) continue ;
+            try {
+                double[] r = measure (w) ;
+                results.put (w.name, r) ;
+                out.println (String.format ("%-20s %10.1f %10.1f %12.1f",
+                                            w.name, r[0], r[1], r[2])) ;
+            } catch (Exception x) {
+                out.println (String.format ("%-20s failed: %s", w.name, x)) ;
+                failed = true ;
+            }
+        }
+        System.setOut (out) ;
+        if (saveFile != null) save (saveFile, results) ;
+        if (checkFile != null) {
+            List<String> worse = regressions (results, load (checkFile), tolerance) ;
+            for (String s : worse) out.println ("Regression: " + s) ;
+            if (!worse.isEmpty()) failed = true ;
+        }
+        if (failed) System.exit (1) ;
+    }
+}
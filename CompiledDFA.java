@@ -0,0 +1,436 @@
+
+// File:   CompiledDFA.java
+// Date:   October 2026
+
+// Table-driven versions of the DFAs defined via Acceptor in GenLexer.java.
+// A CompiledAcceptor probes an existing Acceptor once, when it is built,
+// and records its behaviour as a dense transition table over a small set
+// of character classes.  Processing a character then costs one lookup of
+// its class and one array load, instead of a chain of virtual calls.
+
+
+import java.util.* ;
+
+class CompiledAcceptor implements DFA {
+
+    final String lexClass ;
+    final int numberOfStates ;
+    final int numberOfClasses ;
+    final char[] asciiClass ; // class of each ASCII char
+    final char[] highClass ;  // classes of chars >= 128, null if all the same
+    final char highDefault ;  // the common class of chars >= 128 otherwise
+    final int[] delta ;       // indexed by state * numberOfClasses + class;
+                              // -1 marks a transition out of range
+    final boolean[] accepting ;
+    final boolean[] dead ;
+
+    private int currState = 0 ;
+
+    CompiledAcceptor (Acceptor acc) {
+        lexClass = acc.lexClass() ;
+        numberOfStates = acc.numberOfStates() ;
+        int n = numberOfStates ;
+        int deadState = acc.dead() ;
+        accepting = new boolean[n] ;
+        dead = new boolean[n] ;
+        asciiClass = new char[128] ;
+        for (int s=0; s<n; s++) {
+            accepting[s] = acc.accepting(s) ;
+            dead[s] = (s == deadState) ;
+        }
+
+        // Two chars fall in the same class if every state sends them to
+        // the same place.  Columns are keyed by their successor states,
+        // with one marker value for all out-of-range successors.
+        Map<String,Integer> classes = new HashMap<String,Integer>() ;
+        List<char[]> columns = new ArrayList<char[]>() ;
+        char[] classOf = new char[65536] ;
+        char[] column = new char[n] ;
+        for (int c=0; c<65536; c++) {
+            for (int s=0; s<n; s++) {
+                int t = acc.next(s, (char)c) ;
+                column[s] = (t < 0 || t >= n) ? (char)65535 : (char)t ;
+            }
+            String key = new String(column) ;
+            Integer cls = classes.get(key) ;
+            if (cls == null) {
+                cls = classes.size() ;
+                classes.put(key, cls) ;
+                columns.add(column.clone()) ;
+            }
+            classOf[c] = (char)(int)cls ;
+        }
+        numberOfClasses = columns.size() ;
+
+        System.arraycopy(classOf, 0, asciiClass, 0, 128) ;
+        boolean uniform = true ;
+        for (int c=129; c<65536 && uniform; c++) {
+            uniform = (classOf[c] == classOf[128]) ;
+        }
+        highDefault = classOf[128] ;
+        highClass = uniform ? null : classOf ;
+
+        delta = new int[n * numberOfClasses] ;
+        for (int k=0; k<numberOfClasses; k++) {
+            char[] col = columns.get(k) ;
+            for (int s=0; s<n; s++) {
+                delta[s * numberOfClasses + k] =
+                    (col[s] == (char)65535) ? -1 : col[s] ;
+            }
+        }
+    }
+
+    // A copy sharing the tables of the given acceptor, in its initial state.
+    private CompiledAcceptor (CompiledAcceptor shared) {
+        lexClass = shared.lexClass ;
+        numberOfStates = shared.numberOfStates ;
+        numberOfClasses = shared.numberOfClasses ;
+        asciiClass = shared.asciiClass ;
+        highClass = shared.highClass ;
+        highDefault = shared.highDefault ;
+        delta = shared.delta ;
+        accepting = shared.accepting ;
+        dead = shared.dead ;
+    }
+
+    CompiledAcceptor cursor () {return new CompiledAcceptor (this) ;}
+
+    // Table lookups, also used when combining several compiled acceptors
+
+    int classOf (char c) {
+        if (c < 128) return asciiClass[c] ;
+        else if (highClass == null) return highDefault ;
+        else return highClass[c] ;
+    }
+
+    int step (int state, char c) {
+        return delta[state * numberOfClasses + classOf(c)] ;
+    }
+
+    // The DFA interface
+
+    public String lexClass () {return lexClass ;}
+    public int numberOfStates () {return numberOfStates ;}
+    public void reset () {currState = 0 ;}
+
+    public void processChar (char c) throws StateOutOfRange {
+        int next = step (currState, c) ;
+        if (next < 0) {
+            throw new StateOutOfRange (lexClass, next) ;
+        }
+        currState = next ;
+    }
+
+    public boolean isAccepting () {return accepting[currState] ;}
+    public boolean isDead () {return dead[currState] ;}
+
+    // Compiles an Acceptor, including one wrapped with keywords, leaving
+    // other DFAs as they are.
+
+    static DFA compile (DFA dfa) {
+        if (dfa instanceof Acceptor) {
+            return new CompiledAcceptor ((Acceptor)dfa) ;
+        } else if (dfa instanceof KeywordAcceptor) {
+            KeywordAcceptor k = (KeywordAcceptor)dfa ;
+            return new KeywordAcceptor (compile (k.base), k.table) ;
+        } else return dfa ;
+    }
+}
+
+
+// A single automaton standing for a whole array of acceptors, built by
+// running them side by side (the product construction) and then
+// minimising.  Each state records the highest-priority acceptor that is
+// accepting in it, which is the one GenLexer would pick; the state is
+// dead exactly when every acceptor is dead.  The lexer can therefore make
+// one transition per character however many lexical classes there are.
+
+class MergedDFA {
+
+    final DFA[] acceptors ;     // the original acceptors, in priority order
+    final int numberOfStates ;
+    final int numberOfClasses ;
+    final char[] asciiClass = new char[128] ;
+    final char[] highClass ;
+    final char highDefault ;
+    final int[] delta ;         // indexed by state * numberOfClasses + class
+    final int[] label ;         // accepting acceptor of each state, or -1
+    final boolean[] dead ;
+    final int[] run ;           // kind of run each state loops on, if any
+
+    // States that loop on exactly the whitespace characters, or exactly
+    // the non-newline ones, let the lexer skip such runs in a tight loop.
+    static final int NO_RUN = 0, WHITESPACE_RUN = 1, LINE_RUN = 2 ;
+
+    MergedDFA (DFA[] dfas) throws StateOutOfRange {
+        acceptors = dfas ;
+        int m = dfas.length ;
+        CompiledAcceptor[] comps = new CompiledAcceptor[m] ;
+        for (int i=0; i<m; i++) {
+            // keywords are looked up by the lexer, after the automaton
+            DFA d = dfas[i] ;
+            if (d instanceof KeywordAcceptor) d = ((KeywordAcceptor)d).base ;
+            d = CompiledAcceptor.compile (d) ;
+            if (!(d instanceof CompiledAcceptor)) {
+                throw new IllegalArgumentException
+                    ("Acceptor for " + d.lexClass() + " cannot be merged") ;
+            }
+            comps[i] = (CompiledAcceptor)d ;
+        }
+
+        // Joint character classes: chars are equivalent if they are in
+        // the same class for every acceptor.
+        char[] classOf = new char[65536] ;
+        int k = 1 ;
+        for (int i=0; i<m; i++) {
+            Map<Long,Integer> refined = new HashMap<Long,Integer>() ;
+            for (int c=0; c<65536; c++) {
+                long key = ((long)classOf[c] << 32) | comps[i].classOf((char)c) ;
+                Integer cls = refined.get(key) ;
+                if (cls == null) {
+                    cls = refined.size() ;
+                    refined.put(key, cls) ;
+                }
+                classOf[c] = (char)(int)cls ;
+            }
+            k = refined.size() ;
+        }
+        char[] rep = new char[k] ;   // a representative char for each class
+        for (int c=65535; c>=0; c--) rep[classOf[c]] = (char)c ;
+
+        // Product construction over the reachable tuples of states.
+        // Once every acceptor is dead GenLexer stops reading, so dead
+        // tuples are given self-loops rather than being explored.
+        Map<String,Integer> index = new HashMap<String,Integer>() ;
+        List<char[]> tuples = new ArrayList<char[]>() ;
+        char[] start = new char[m] ;
+        index.put (new String(start), 0) ;
+        tuples.add (start) ;
+        int[] prodDelta = new int[16 * k] ;
+        for (int p=0; p<tuples.size(); p++) {
+            char[] tuple = tuples.get(p) ;
+            if (prodDelta.length < (p+1) * k) {
+                prodDelta = Arrays.copyOf (prodDelta, 2 * prodDelta.length) ;
+            }
+            boolean allDead = true ;
+            for (int i=0; i<m; i++) allDead &= comps[i].dead[tuple[i]] ;
+            for (int cls=0; cls<k; cls++) {
+                if (allDead) {
+                    prodDelta[p * k + cls] = p ;
+                    continue ;
+                }
+                char[] next = new char[m] ;
+                for (int i=0; i<m; i++) {
+                    int t = comps[i].step (tuple[i], rep[cls]) ;
+                    if (t < 0) {
+                        throw new StateOutOfRange (comps[i].lexClass(), t) ;
+                    }
+                    next[i] = (char)t ;
+                }
+                String key = new String(next) ;
+                Integer q = index.get(key) ;
+                if (q == null) {
+                    q = tuples.size() ;
+                    index.put (key, q) ;
+                    tuples.add (next) ;
+                }
+                prodDelta[p * k + cls] = q ;
+            }
+        }
+
+        // Minimise, starting from the partition by (label, deadness).
+        int n = tuples.size() ;
+        int[] prodLabel = new int[n] ;
+        int[] initial = new int[n] ;
+        for (int p=0; p<n; p++) {
+            char[] tuple = tuples.get(p) ;
+            prodLabel[p] = -1 ;
+            boolean allDead = true ;
+            for (int i=0; i<m; i++) {
+                if (prodLabel[p] < 0 && comps[i].accepting[tuple[i]]) {
+                    prodLabel[p] = i ;
+                }
+                allDead &= comps[i].dead[tuple[i]] ;
+            }
+            initial[p] = 2 * (prodLabel[p] + 1) + (allDead ? 1 : 0) ;
+        }
+        int[] block = minimise (n, k, prodDelta, initial) ;
+        int blocks = 0 ;
+        for (int p=0; p<n; p++) blocks = Math.max (blocks, block[p] + 1) ;
+
+        numberOfStates = blocks ;
+        numberOfClasses = k ;
+        delta = new int[blocks * k] ;
+        label = new int[blocks] ;
+        dead = new boolean[blocks] ;
+        for (int p=0; p<n; p++) {
+            int b = block[p] ;
+            label[b] = prodLabel[p] ;
+            dead[b] = (initial[p] % 2 == 1) ;
+            for (int cls=0; cls<k; cls++) {
+                delta[b * k + cls] = block[prodDelta[p * k + cls]] ;
+            }
+        }
+        System.arraycopy (classOf, 0, asciiClass, 0, 128) ;
+        boolean uniform = true ;
+        for (int c=129; c<65536 && uniform; c++) {
+            uniform = (classOf[c] == classOf[128]) ;
+        }
+        highDefault = classOf[128] ;
+        highClass = uniform ? null : classOf ;
+
+        run = new int[blocks] ;
+        for (int b=0; b<blocks; b++) {
+            if (dead[b]) continue ;
+            boolean whitespace = true, line = true ;
+            for (int c=0; c<65536; c++) {
+                boolean loops = (step (b, (char)c) == b) ;
+                whitespace &= (loops == CharTypes.isWhitespace((char)c)) ;
+                line &= (loops == !CharTypes.isNewline((char)c)) ;
+            }
+            run[b] = whitespace ? WHITESPACE_RUN : line ? LINE_RUN : NO_RUN ;
+        }
+    }
+
+    int classOf (char c) {
+        if (c < 128) return asciiClass[c] ;
+        else if (highClass == null) return highDefault ;
+        else return highClass[c] ;
+    }
+
+    int step (int state, char c) {
+        return delta[state * numberOfClasses + classOf(c)] ;
+    }
+
+    // Hopcroft's partition refinement.  Given a transition table over n
+    // states and k classes, and an initial partition (states with equal
+    // values of initial[] start in the same block), returns the block of
+    // each state in the coarsest consistent partition.  Blocks are
+    // numbered in order of first appearance from state 0, so the initial
+    // state stays state 0.
+
+    // The states of each block are kept together in one array, those
+    // found to enter the splitter by some class being moved to the front
+    // of their block as they are found, from the inverse transitions, so
+    // a block is split in time proportional to the part split off.  Of
+    // the two parts of a block split that is not waiting to be used as a
+    // splitter, only the smaller is added to the worklist, so each state
+    // is in a splitter O(log n) times, and the whole takes O(k n log n).
+
+    static int[] minimise (int n, int k, int[] delta, int[] initial) {
+        // The states with a c-transition into t are
+        // from[into[c*n+t]] .. from[into[c*n+t+1] - 1].
+        int[] into = new int[k * n + 1] ;
+        for (int s=0; s<n; s++) {
+            for (int c=0; c<k; c++) into[c * n + delta[s * k + c] + 1]++ ;
+        }
+        for (int i=0; i<k*n; i++) into[i+1] += into[i] ;
+        int[] from = new int[k * n] ;
+        int[] fill = Arrays.copyOf (into, k * n) ;
+        for (int s=0; s<n; s++) {
+            for (int c=0; c<k; c++) from[fill[c * n + delta[s * k + c]]++] = s ;
+        }
+
+        // Block b holds the states elems[first[b]] .. elems[end[b] - 1],
+        // of which the first marked[b] have been found to enter the
+        // splitter; pos is the inverse of elems.
+        int[] block = new int[n], elems = new int[n], pos = new int[n] ;
+        int[] first = new int[n], end = new int[n], marked = new int[n] ;
+        int blocks = 0 ;
+        Map<Integer,Integer> byValue = new HashMap<Integer,Integer>() ;
+        for (int s=0; s<n; s++) {
+            Integer b = byValue.get(initial[s]) ;
+            if (b == null) {
+                b = blocks++ ;
+                byValue.put (initial[s], b) ;
+            }
+            block[s] = b ;
+            end[b]++ ;
+        }
+        for (int b=1; b<blocks; b++) end[b] += end[b-1] ;
+        for (int s=n-1; s>=0; s--) {
+            int p = --end[block[s]] ;
+            elems[p] = s ;
+            pos[s] = p ;
+        }
+        for (int b=0; b<blocks; b++) {
+            first[b] = end[b] ;
+            end[b] = (b + 1 < blocks) ? end[b+1] : n ;
+        }
+
+        Deque<Integer> work = new ArrayDeque<Integer>() ;
+        boolean[] inWork = new boolean[n] ;
+        for (int b=0; b<blocks; b++) {
+            work.add(b) ;
+            inWork[b] = true ;
+        }
+        int[] splitter = new int[n] ;
+        int[] touched = new int[n] ;
+        while (!work.isEmpty()) {
+            int a = work.poll() ;
+            inWork[a] = false ;
+            int size = end[a] - first[a] ;
+            System.arraycopy (elems, first[a], splitter, 0, size) ;
+            for (int c=0; c<k; c++) {
+                // Mark the states with a c-transition into the splitter
+                int touchedBlocks = 0 ;
+                for (int i=0; i<size; i++) {
+                    int t = c * n + splitter[i] ;
+                    for (int j=into[t]; j<into[t+1]; j++) {
+                        int s = from[j] ;
+                        int b = block[s] ;
+                        int p = first[b] + marked[b] ;
+                        if (pos[s] < p) continue ;       // already marked
+                        if (marked[b]++ == 0) touched[touchedBlocks++] = b ;
+                        int other = elems[p] ;
+                        elems[pos[s]] = other ;
+                        pos[other] = pos[s] ;
+                        elems[p] = s ;
+                        pos[s] = p ;
+                    }
+                }
+                // Split the marked states off into blocks of their own
+                for (int i=0; i<touchedBlocks; i++) {
+                    int y = touched[i] ;
+                    int m = marked[y] ;
+                    marked[y] = 0 ;
+                    if (m == end[y] - first[y]) continue ;
+                    int z = blocks++ ;
+                    first[z] = first[y] ;
+                    end[z] = first[y] = first[y] + m ;
+                    for (int p=first[z]; p<end[z]; p++) block[elems[p]] = z ;
+                    if (inWork[y]) {
+                        work.add(z) ;
+                        inWork[z] = true ;
+                    } else {
+                        int smaller = (m <= end[y] - first[y]) ? z : y ;
+                        work.add (smaller) ;
+                        inWork[smaller] = true ;
+                    }
+                }
+            }
+        }
+
+        // Renumber the blocks breadth-first from the initial state.
+        int[] number = new int[blocks] ;
+        Arrays.fill (number, -1) ;
+        int[] queue = new int[blocks] ;
+        int head = 0, tail = 0 ;
+        number[block[0]] = tail ;
+        queue[tail++] = block[0] ;
+        while (head < tail) {
+            int b = queue[head++] ;
+            int s = elems[first[b]] ;
+            for (int c=0; c<k; c++) {
+                int t = block[delta[s * k + c]] ;
+                if (number[t] < 0) {
+                    number[t] = tail ;
+                    queue[tail++] = t ;
+                }
+            }
+        }
+        int[] result = new int[n] ;
+        for (int s=0; s<n; s++) result[s] = number[block[s]] ;
+        return result ;
+    }
+}
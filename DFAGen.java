@@ -0,0 +1,473 @@
+
+// File:   DFAGen.java
+// Date:   October 2026
+
+// Generating acceptors from regular expressions.
+// A token spec file lists lexical classes in order of priority, one per
+// line, as
+//    ClassName  "lexClass"  regex
+// Blank lines and lines starting with // are ignored.  For each line
+// DFAGen builds an NFA from the regex (Thompson's construction), makes it
+// deterministic (the subset construction), minimises the result
+// (Hopcroft's algorithm, as in MergedDFA), and writes out a Java class
+// for it.  The generated classes are Acceptors, so they can be merged or
+// compiled like any other, but they also process characters themselves
+// with a static switch over states and tests on character ranges, without
+// the virtual calls of the Acceptor machinery.  A further class, named
+// after the output file, holds all the acceptors in priority order.
+
+// Usage:
+//    java DFAGen MHTokens.spec MHTokens.java
+// which should be rerun whenever the spec changes.
+
+// Regexes may use
+//    x          the character x, unless it is one of  \ . | * + ? ( ) [ ]
+//    \x         the character x, where x may also be n, r, t or f
+//    .          any character
+//    [...]      a set of characters and ranges a-z; [^...] its complement
+//    r s, r|s, r*, r+, r?, (r)
+// with spaces only as \  or inside [...].
+
+
+import java.io.* ;
+import java.nio.charset.StandardCharsets ;
+import java.nio.file.* ;
+import java.util.* ;
+
+class RegexError extends Exception {
+    private static final long serialVersionUID = 1L ;
+    public RegexError (String regex, String problem) {
+    super ("Bad regex " + regex + ": " + problem) ;
+    }
+}
+
+class DFAGen {
+
+    // Sets of characters are held as sorted, disjoint, non-adjacent
+    // ranges: lo0, hi0, lo1, hi1, ... inclusive.
+
+    static final int MAX_CHAR = 65535 ;
+
+    static int[] range (int lo, int hi) {return new int[] {lo, hi} ;}
+
+    static int[] union (int[] a, int[] b) {
+        List<int[]> ranges = new ArrayList<int[]>() ;
+        for (int i=0; i<a.length; i+=2) ranges.add (range (a[i], a[i+1])) ;
+        for (int i=0; i<b.length; i+=2) ranges.add (range (b[i], b[i+1])) ;
+        Collections.sort (ranges, new Comparator<int[]>() {
+            public int compare (int[] x, int[] y) {return Integer.compare (x[0], y[0]) ;}
+        }) ;
+        int[] out = new int[2 * ranges.size()] ;
+        int n = 0 ;
+        for (int[] r : ranges) {
+            if (n > 0 && r[0] <= out[n-1] + 1) {
+                out[n-1] = Math.max (out[n-1], r[1]) ;
+            } else {
+                out[n++] = r[0] ; out[n++] = r[1] ;
+            }
+        }
+        return Arrays.copyOf (out, n) ;
+    }
+
+    static int[] complement (int[] a) {
+        int[] out = new int[a.length + 2] ;
+        int n = 0, next = 0 ;
+        for (int i=0; i<a.length; i+=2) {
+            if (a[i] > next) {out[n++] = next ; out[n++] = a[i] - 1 ;}
+            next = a[i+1] + 1 ;
+        }
+        if (next <= MAX_CHAR) {out[n++] = next ; out[n++] = MAX_CHAR ;}
+        return Arrays.copyOf (out, n) ;
+    }
+
+    static boolean contains (int[] set, int c) {
+        for (int i=0; i<set.length; i+=2) {
+            if (c >= set[i] && c <= set[i+1]) return true ;
+        }
+        return false ;
+    }
+
+    // Thompson NFAs.  Each state has at most one labelled transition, and
+    // any number of epsilon transitions.
+
+    List<int[]> labels = new ArrayList<int[]>() ;       // null if none
+    List<Integer> targets = new ArrayList<Integer>() ;
+    List<List<Integer>> epsilons = new ArrayList<List<Integer>>() ;
+
+    int newState () {
+        labels.add (null) ;
+        targets.add (-1) ;
+        epsilons.add (new ArrayList<Integer>()) ;
+        return labels.size() - 1 ;
+    }
+
+    // A fragment of NFA, from start to end.
+    static class Fragment {
+        int start, end ;
+        Fragment (int start, int end) {this.start = start ; this.end = end ;}
+    }
+
+    Fragment chars (int[] set) {
+        Fragment f = new Fragment (newState(), newState()) ;
+        labels.set (f.start, set) ;
+        targets.set (f.start, f.end) ;
+        return f ;
+    }
+
+    Fragment empty () {
+        Fragment f = new Fragment (newState(), newState()) ;
+        epsilons.get(f.start).add (f.end) ;
+        return f ;
+    }
+
+    // The regex parser, by recursive descent, building fragments as it goes.
+
+    String regex ;
+    int pos ;
+
+    Fragment parse (String regex) throws RegexError {
+        this.regex = regex ;
+        this.pos = 0 ;
+        Fragment f = alternatives () ;
+        if (pos < regex.length()) {
+            throw new RegexError (regex, "unexpected " + regex.charAt(pos)) ;
+        }
+        return f ;
+    }
+
+    boolean more () {return pos < regex.length() ;}
+    char peek () {return regex.charAt(pos) ;}
+
+    Fragment alternatives () throws RegexError {
+        Fragment f = sequence () ;
+        while (more() && peek() == '|') {
+            pos++ ;
+            Fragment g = sequence () ;
+            Fragment h = new Fragment (newState(), newState()) ;
+            epsilons.get(h.start).add (f.start) ;
+            epsilons.get(h.start).add (g.start) ;
+            epsilons.get(f.end).add (h.end) ;
+            epsilons.get(g.end).add (h.end) ;
+            f = h ;
+        }
+        return f ;
+    }
+
+    Fragment sequence () throws RegexError {
+        Fragment f = empty () ;
+        while (more() && peek() != '|' && peek() != ')') {
+            Fragment g = repetition () ;
+            epsilons.get(f.end).add (g.start) ;
+            f = new Fragment (f.start, g.end) ;
+        }
+        return f ;
+    }
+
+    Fragment repetition () throws RegexError {
+        Fragment f = atom () ;
+        while (more() && (peek() == '*' || peek() == '+' || peek() == '?')) {
+            char op = regex.charAt(pos++) ;
+            Fragment g = new Fragment (newState(), newState()) ;
+            epsilons.get(g.start).add (f.start) ;
+            epsilons.get(f.end).add (g.end) ;
+            if (op != '+') epsilons.get(g.start).add (g.end) ;
+            if (op != '?') epsilons.get(f.end).add (f.start) ;
+            f = g ;
+        }
+        return f ;
+    }
+
+    Fragment atom () throws RegexError {
+        char c = regex.charAt(pos++) ;
+        switch (c) {
+        case '(':
+            Fragment f = alternatives () ;
+            if (!more() || peek() != ')') throw new RegexError (regex, "missing )") ;
+            pos++ ;
+            return f ;
+        case '[':
+            return chars (charClass ()) ;
+        case '.':
+            return chars (range (0, MAX_CHAR)) ;
+        case '\\':
+            int e = escape () ;
+            return chars (range (e, e)) ;
+        case '*': case '+': case '?': case ')': case ']':
+            throw new RegexError (regex, "unexpected " + c) ;
+        default:
+            return chars (range (c, c)) ;
+        }
+    }
+
+    // The character after a backslash.
+    int escape () throws RegexError {
+        if (!more()) throw new RegexError (regex, "\\ at end") ;
+        char c = regex.charAt(pos++) ;
+        switch (c) {
+        case 'n': return '\n' ;
+        case 'r': return '\r' ;
+        case 't': return '\t' ;
+        case 'f': return '\f' ;
+        default: return c ;
+        }
+    }
+
+    int[] charClass () throws RegexError {
+        boolean negated = more() && peek() == '^' ;
+        if (negated) pos++ ;
+        int[] set = new int[0] ;
+        boolean first = true ;
+        while (more() && (peek() != ']' || first)) {
+            int lo = regex.charAt(pos++) ;
+            if (lo == '\\') lo = escape () ;
+            int hi = lo ;
+            if (pos + 1 < regex.length() && peek() == '-' && regex.charAt(pos+1) != ']') {
+                pos++ ;
+                hi = regex.charAt(pos++) ;
+                if (hi == '\\') hi = escape () ;
+                if (hi < lo) throw new RegexError (regex, "empty range") ;
+            }
+            set = union (set, range (lo, hi)) ;
+            first = false ;
+        }
+        if (!more()) throw new RegexError (regex, "missing ]") ;
+        pos++ ;
+        return negated ? complement (set) : set ;
+    }
+
+    // The subset construction, over the elementary intervals into which
+    // the labels of the NFA cut the alphabet.
+
+    int[] bounds ;          // interval i is bounds[i] .. bounds[i+1]-1
+    int[] dfaDelta ;        // state * intervals + interval
+    boolean[] dfaAccepting ;
+    int dfaStates ;
+
+    void determinise (Fragment nfa) {
+        TreeSet<Integer> points = new TreeSet<Integer>() ;
+        points.add (0) ;
+        points.add (MAX_CHAR + 1) ;
+        for (int[] set : labels) {
+            if (set == null) continue ;
+            for (int i=0; i<set.length; i+=2) {
+                points.add (set[i]) ;
+                points.add (set[i+1] + 1) ;
+            }
+        }
+        bounds = new int[points.size()] ;
+        int b = 0 ;
+        for (int p : points) bounds[b++] = p ;
+        int k = bounds.length - 1 ;
+
+        Map<BitSet,Integer> index = new HashMap<BitSet,Integer>() ;
+        List<BitSet> subsets = new ArrayList<BitSet>() ;
+        BitSet start = new BitSet () ;
+        start.set (nfa.start) ;
+        closure (start) ;
+        index.put (start, 0) ;
+        subsets.add (start) ;
+        int[] delta = new int[16 * k] ;
+        for (int d=0; d<subsets.size(); d++) {
+            if (delta.length < (d+1) * k) delta = Arrays.copyOf (delta, 2 * delta.length) ;
+            BitSet from = subsets.get(d) ;
+            for (int i=0; i<k; i++) {
+                BitSet to = new BitSet () ;
+                for (int s = from.nextSetBit(0); s >= 0; s = from.nextSetBit(s+1)) {
+                    int[] set = labels.get(s) ;
+                    if (set != null && contains (set, bounds[i])) to.set (targets.get(s)) ;
+                }
+                closure (to) ;
+                Integer t = index.get(to) ;
+                if (t == null) {
+                    t = subsets.size() ;
+                    index.put (to, t) ;
+                    subsets.add (to) ;
+                }
+                delta[d * k + i] = t ;
+            }
+        }
+        dfaStates = subsets.size() ;
+        dfaDelta = delta ;
+        dfaAccepting = new boolean[dfaStates] ;
+        for (int d=0; d<dfaStates; d++) {
+            dfaAccepting[d] = subsets.get(d).get (nfa.end) ;
+        }
+    }
+
+    void closure (BitSet set) {
+        Deque<Integer> work = new ArrayDeque<Integer>() ;
+        for (int s = set.nextSetBit(0); s >= 0; s = set.nextSetBit(s+1)) work.add (s) ;
+        while (!work.isEmpty()) {
+            for (int t : epsilons.get (work.poll())) {
+                if (!set.get(t)) {
+                    set.set (t) ;
+                    work.add (t) ;
+                }
+            }
+        }
+    }
+
+    // The minimal DFA: its transitions, accepting states and dead state
+    // (-1 if there is none).
+
+    int states, dead ;
+    int[] delta ;
+    boolean[] accepting ;
+
+    void minimise () {
+        int k = bounds.length - 1 ;
+        int[] initial = new int[dfaStates] ;
+        for (int d=0; d<dfaStates; d++) initial[d] = dfaAccepting[d] ? 1 : 0 ;
+        int[] block = MergedDFA.minimise (dfaStates, k, dfaDelta, initial) ;
+        states = 0 ;
+        for (int d=0; d<dfaStates; d++) states = Math.max (states, block[d] + 1) ;
+        delta = new int[states * k] ;
+        accepting = new boolean[states] ;
+        for (int d=0; d<dfaStates; d++) {
+            accepting[block[d]] = dfaAccepting[d] ;
+            for (int i=0; i<k; i++) {
+                delta[block[d] * k + i] = block[dfaDelta[d * k + i]] ;
+            }
+        }
+        dead = -1 ;
+        for (int s=0; s<states && dead < 0; s++) {
+            boolean loops = !accepting[s] ;
+            for (int i=0; i<k && loops; i++) loops = (delta[s * k + i] == s) ;
+            if (loops) dead = s ;
+        }
+    }
+
+    // Building the minimal DFA for a regex.
+    void build (String regex) throws RegexError {
+        labels.clear() ; targets.clear() ; epsilons.clear() ;
+        Fragment nfa = parse (regex) ;
+        determinise (nfa) ;
+        minimise () ;
+    }
+
+    // Writing out the class.
+
+    static String literal (int c) {
+        if (c >= 32 && c < 127 && c != '\'' && c != '\\') return "'" + (char)c + "'" ;
+        return Integer.toString (c) ;
+    }
+
+    void emit (PrintWriter out, String className, String lexClass, String regex) {
+        int k = bounds.length - 1 ;
+        out.println ("// \"" + lexClass + "\"  " + regex) ;
+        out.println () ;
+        out.println ("class " + className + " extends Acceptor implements DFA {") ;
+        out.println () ;
+        out.println ("    public String lexClass () {return \"" + lexClass + "\" ;}") ;
+        out.println ("    public int numberOfStates () {return " + states + " ;}") ;
+        out.println ("    int next (int state, char c) {return step (state, c) ;}") ;
+        out.println ("    boolean accepting (int state) {return isAccepting (state) ;}") ;
+        out.println ("    int dead () {return " + dead + " ;}") ;
+        out.println () ;
+        out.println ("    static int step (int state, char c) {") ;
+        out.println ("        switch (state) {") ;
+        for (int s=0; s<states; s++) {
+            if (s == dead) continue ;
+            out.println ("        case " + s + ":") ;
+            // ranges of chars leading to each live state
+            Map<Integer,List<int[]>> moves = new TreeMap<Integer,List<int[]>>() ;
+            for (int i=0; i<k; i++) {
+                int t = delta[s * k + i] ;
+                if (t == dead) continue ;
+                List<int[]> ranges = moves.get(t) ;
+                if (ranges == null) {
+                    ranges = new ArrayList<int[]>() ;
+                    moves.put (t, ranges) ;
+                }
+                int[] last = ranges.isEmpty() ? null : ranges.get (ranges.size() - 1) ;
+                if (last != null && last[1] + 1 == bounds[i]) {
+                    last[1] = bounds[i+1] - 1 ;
+                } else ranges.add (range (bounds[i], bounds[i+1] - 1)) ;
+            }
+            for (Map.Entry<Integer,List<int[]>> e : moves.entrySet()) {
+                StringBuilder test = new StringBuilder () ;
+                for (int[] r : e.getValue()) {
+                    if (test.length() > 0) test.append (" || ") ;
+                    if (r[0] == r[1]) test.append ("c == " + literal (r[0])) ;
+                    else if (r[0] == 0 && r[1] == MAX_CHAR) test.append ("true") ;
+                    else if (r[0] == 0) test.append ("c <= " + literal (r[1])) ;
+                    else if (r[1] == MAX_CHAR) test.append ("c >= " + literal (r[0])) ;
+                    else test.append ("(c >= " + literal (r[0]) +
+                                      " && c <= " + literal (r[1]) + ")") ;
+                }
+                out.println ("            if (" + test + ") return " + e.getKey() + " ;") ;
+            }
+            out.println ("            return " + dead + " ;") ;
+        }
+        out.println ("        default: return " + dead + " ;") ;
+        out.println ("        }") ;
+        out.println ("    }") ;
+        out.println () ;
+        StringBuilder accepts = new StringBuilder () ;
+        for (int s=0; s<states; s++) {
+            if (!accepting[s]) continue ;
+            if (accepts.length() > 0) accepts.append (" || ") ;
+            accepts.append ("state == " + s) ;
+        }
+        if (accepts.length() == 0) accepts.append ("false") ;
+        out.println ("    static boolean isAccepting (int state) {return " + accepts + " ;}") ;
+        out.println () ;
+        out.println ("    // The Acceptor machinery, without virtual calls") ;
+        out.println ("    private int state = 0 ;") ;
+        out.println ("    public void reset () {state = 0 ;}") ;
+        out.println ("    public void processChar (char c) {state = step (state, c) ;}") ;
+        out.println ("    public boolean isAccepting () {return isAccepting (state) ;}") ;
+        out.println ("    public boolean isDead () {return state == " + dead + " ;}") ;
+        out.println ("}") ;
+        out.println () ;
+        out.println () ;
+    }
+
+    public static void main (String[] args) throws IOException, RegexError {
+        String spec = args[0], output = args[1] ;
+        String holder = Paths.get(output).getFileName().toString().replaceAll ("\\.java$", "") ;
+        List<String> classNames = new ArrayList<String>() ;
+        StringWriter body = new StringWriter () ;
+        PrintWriter out = new PrintWriter (body) ;
+        int lineNumber = 0 ;
+        for (String line : Files.readAllLines (Paths.get(spec), StandardCharsets.UTF_8)) {
+            lineNumber++ ;
+            line = line.trim() ;
+            if (line.isEmpty() || line.startsWith ("//")) continue ;
+            int q1 = line.indexOf ('"'), q2 = line.indexOf ('"', q1 + 1) ;
+            if (q1 < 0 || q2 < 0) {
+                throw new IOException (spec + ":" + lineNumber + ": lexical class must be quoted") ;
+            }
+            String className = line.substring (0, q1).trim() ;
+            String lexClass = line.substring (q1 + 1, q2) ;
+            String regex = line.substring (q2 + 1).trim() ;
+            DFAGen gen = new DFAGen () ;
+            gen.build (regex) ;
+            gen.emit (out, className, lexClass, regex) ;
+            classNames.add (className) ;
+        }
+        out.flush () ;
+        try (PrintWriter file = new PrintWriter (Files.newBufferedWriter
+                                 (Paths.get(output), StandardCharsets.UTF_8))) {
+            file.println () ;
+            file.println ("// File:   " + output) ;
+            file.println ("// Generated by DFAGen from " + spec + " - do not edit.") ;
+            file.println () ;
+            file.println () ;
+            file.print (body) ;
+            file.println ("// All of the above, in order of priority") ;
+            file.println () ;
+            file.println ("class " + holder + " {") ;
+            file.println () ;
+            file.println ("    static DFA[] acceptors () {") ;
+            file.println ("        return new DFA[] {") ;
+            for (int i=0; i<classNames.size(); i++) {
+                file.println ("            new " + classNames.get(i) + " ()" +
+                              (i < classNames.size() - 1 ? "," : "")) ;
+            }
+            file.println ("        } ;") ;
+            file.println ("    }") ;
+            file.println ("}") ;
+        }
+    }
+}
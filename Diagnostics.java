@@ -0,0 +1,98 @@
+// File:   Diagnostics.java
+// Date:   October 2026
+
+// A sink for the errors found by a lexer and parser running in recovery
+// mode.  Instead of throwing LexError or UnexpectedInput at the first
+// error, GenLexer skips characters it cannot make a token of, and
+// GenParser skips tokens to the next point where it can go on, each
+// recording the error here.  So one pass over a file finds all its errors.
+
+// Each error is held as a few numbers in arrays allocated up front, and
+// no exception (and so no stack trace) is made for it; the message is
+// only put together when asked for.  Errors beyond the capacity are
+// counted but not kept.  A sink can be cleared and used for file after
+// file, but not by two lexers or parsers at once.
+
+// Usage:
+//    Diagnostics problems = new Diagnostics (100) ;
+//    GenLexer lexer = new MH_Lexer (input) ;
+//    lexer.diagnostics = problems ;
+//    TREE tree = parser.parseRecovering (lexer, problems) ;
+//    for (int i=0; i<problems.size(); i++) System.out.println (problems.message(i)) ;
+
+
+class Diagnostics {
+
+    static final int LEXICAL = 0, SYNTAX = 1 ;
+
+    int[] kind ;
+    long[] start, end ;      // offsets in the input, or -1 at end of input
+    int[] expected ;         // symbol id expected, for a syntax error
+    int[] found ;            // lexical class id found (-1 at end of input),
+                             // or the code point of the first bad character,
+                             // for a lexical error
+    int count = 0 ;
+    int dropped = 0 ;        // errors not kept for lack of room
+
+    Diagnostics (int capacity) {
+        kind = new int[capacity] ;
+        start = new long[capacity] ;
+        end = new long[capacity] ;
+        expected = new int[capacity] ;
+        found = new int[capacity] ;
+    }
+
+    int size () {return count ;}
+
+    // All the errors, including those not kept
+    int total () {return count + dropped ;}
+
+    boolean isEmpty () {return total() == 0 ;}
+
+    void clear () {
+        count = 0 ;
+        dropped = 0 ;
+    }
+
+    // Characters from..to could not begin a token, the first being the
+    // code point c.  A run of such characters makes one error.
+    void lexical (long from, long to, int c) {
+        if (count > 0 && kind[count-1] == LEXICAL && end[count-1] == from) {
+            end[count-1] = to ;
+            return ;
+        }
+        add (LEXICAL, from, to, -1, c) ;
+    }
+
+    // A token of class lexClass (-1 at end of input) was found where the
+    // symbol expected was needed.
+    void syntax (long from, long to, int expected, int lexClass) {
+        add (SYNTAX, from, to, expected, lexClass) ;
+    }
+
+    void add (int k, long from, long to, int e, int f) {
+        if (count == kind.length) {
+            dropped++ ;
+            return ;
+        }
+        kind[count] = k ;
+        start[count] = from ;
+        end[count] = to ;
+        expected[count] = e ;
+        found[count] = f ;
+        count++ ;
+    }
+
+    // The i'th error, in the words of LexError and UnexpectedInput
+    String message (int i) {
+        String where = (start[i] < 0) ? "at end of input"
+            : "at " + start[i] + "-" + end[i] ;
+        if (kind[i] == LEXICAL) {
+            return where + ": Can't make lexical token from input starting \""
+                + new String (Character.toChars (found[i])) + "\"" ;
+        }
+        return where + ": Parse error: "
+            + ((found[i] < 0) ? "end of input" : Symbols.name (found[i]))
+            + " encountered where " + Symbols.name (expected[i]) + " expected." ;
+    }
+}
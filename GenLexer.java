@@ -8,41 +8,78 @@
 
 
 import java.io.* ;
+import java.util.* ;
+import java.util.concurrent.ConcurrentHashMap ;
 
 // Some useful sets of characters.
+// All of them lie within ASCII, so each ASCII char has a byte of flags
+// saying which sets it is in, and anything above ASCII is in none.
 
 class CharTypes {
 
-    static boolean isLetter (char c) {
-    return (('a' <= c && c <= 'z') || ('A' <= c && c <= 'Z')) ;
+    static final int LETTER = 1, SMALL = 2, LARGE = 4, DIGIT = 8,
+    SYMBOLIC = 16, WHITESPACE = 32, NEWLINE = 64 ;
+
+    static final byte[] flags = new byte[128] ;
+
+    static {
+    for (char c='a'; c<='z'; c++) flags[c] |= LETTER | SMALL ;
+    for (char c='A'; c<='Z'; c++) flags[c] |= LETTER | LARGE ;
+    for (char c='0'; c<='9'; c++) flags[c] |= DIGIT ;
+    flags['_'] |= SMALL ;
+    for (char c : "!#$%&*+./<=>?@\\^|-~:".toCharArray()) flags[c] |= SYMBOLIC ;
+    for (char c : " \t\r\n\f".toCharArray()) flags[c] |= WHITESPACE ;
+    for (char c : "\r\n\f".toCharArray()) flags[c] |= NEWLINE ;
     }
 
-    static boolean isSmall (char c) {
-    return (('a' <= c && c <= 'z') || c == '_') ;
+    static boolean is (char c, int set) {
+    return (c < 128 && (flags[c] & set) != 0) ;
+    }
+
+    static boolean isLetter (char c) {return is (c, LETTER) ;}
+    static boolean isSmall (char c) {return is (c, SMALL) ;}
+    static boolean isLarge (char c) {return is (c, LARGE) ;}
+    static boolean isDigit (char c) {return is (c, DIGIT) ;}
+    static boolean isSymbolic (char c) {return is (c, SYMBOLIC) ;}
+    static boolean isWhitespace (char c) {return is (c, WHITESPACE) ;}
+    static boolean isNewline (char c) {return is (c, NEWLINE) ;}
+
+    // Bulk scanning: each returns the first index from `from' (and before
+    // `to') not in the run, or `to' if the run reaches it.
+
+    static int skipWhitespace (char[] a, int from, int to) {
+    while (from < to && a[from] < 128 && (flags[a[from]] & WHITESPACE) != 0) from++ ;
+    return from ;
     }
 
-    static boolean isLarge (char c) {
-    return ('A' <= c && c <= 'Z') ;
+    static int skipToNewline (char[] a, int from, int to) {
+    while (from < to && (a[from] >= 128 || (flags[a[from]] & NEWLINE) == 0)) from++ ;
+    return from ;
     }
 
-    static boolean isDigit (char c) {
-    return ('0' <= c && c <= '9') ;
+    static int skipWhitespace (CharSequence s, int from, int to) {
+    while (from < to && isWhitespace (s.charAt(from))) from++ ;
+    return from ;
     }
 
-    static boolean isSymbolic (char c) {
-    return (c == '!' || c == '#' || c == '$' || c == '%' || c == '&' || 
-        c == '*' || c == '+' || c == '.' || c == '/' || c == '<' || 
-        c == '=' || c == '>' || c == '?' || c == '@' || c == '\\' ||
-        c == '^' || c == '|' || c == '-' || c == '~' || c == ':') ;
-    // inefficient but clear
+    static int skipToNewline (CharSequence s, int from, int to) {
+    while (from < to && !isNewline (s.charAt(from))) from++ ;
+    return from ;
     }
 
-    static boolean isWhitespace (char c) {
-    return (c == ' ' || c == '\t' || c == '\r' || c == '\n' || c == '\f') ;
+    // UTF-8 bytes: every byte of a non-ASCII character is negative, and
+    // so in neither set.
+
+    static int skipWhitespace (java.nio.ByteBuffer b, int from, int to) {
+    int x ;
+    while (from < to && (x = b.get(from)) >= 0 && (flags[x] & WHITESPACE) != 0) from++ ;
+    return from ;
     }
 
-    static boolean isNewline (char c) {
-    return (c == '\r' || c == '\n' || c == '\f' ) ;
+    static int skipToNewline (java.nio.ByteBuffer b, int from, int to) {
+    int x ;
+    while (from < to && ((x = b.get(from)) < 0 || (flags[x] & NEWLINE) == 0)) from++ ;
+    return from ;
     }
 
 }
@@ -83,6 +120,47 @@ abstract class Acceptor {
     public boolean isDead () {return (currState == dead()) ;}
 }
 
+// An Acceptor's next, accepting and dead methods depend only on their
+// arguments, so the Acceptor itself can serve as a fixed definition, with
+// the current state held in a cursor of which each lexer has its own.
+
+class AcceptorCursor implements DFA {
+
+    final Acceptor definition ;
+    private int currState = 0 ;
+
+    AcceptorCursor (Acceptor definition) {this.definition = definition ;}
+
+    public String lexClass () {return definition.lexClass() ;}
+    public int numberOfStates () {return definition.numberOfStates() ;}
+    public void reset () {currState = 0 ;}
+
+    public void processChar (char c) throws StateOutOfRange {
+    currState = definition.next (currState,c) ;
+    if (currState >= definition.numberOfStates() || currState < 0) {
+        throw new StateOutOfRange (definition.lexClass(), currState) ;
+    }
+    }
+
+    public boolean isAccepting () {return definition.accepting (currState) ;}
+    public boolean isDead () {return (currState == definition.dead()) ;}
+
+    // A DFA with the behaviour of the given one and a state of its own.
+    // DFAs of other kinds cannot be copied, and are returned as they are.
+    static DFA cursor (DFA dfa) {
+    if (dfa instanceof Acceptor) {
+        return new AcceptorCursor ((Acceptor)dfa) ;
+    } else if (dfa instanceof AcceptorCursor) {
+        return new AcceptorCursor (((AcceptorCursor)dfa).definition) ;
+    } else if (dfa instanceof CompiledAcceptor) {
+        return ((CompiledAcceptor)dfa).cursor() ;
+    } else if (dfa instanceof KeywordAcceptor) {
+        KeywordAcceptor k = (KeywordAcceptor)dfa ;
+        return new KeywordAcceptor (cursor (k.base), k.table) ;
+    } else return dfa ;
+    }
+}
+
 class StateOutOfRange extends Exception {
     public StateOutOfRange (String lexClassName, int state) {
     super ("Illegal state " + Integer.toString(state) + 
@@ -160,16 +238,99 @@ class SpaceAcceptor extends Acceptor implements DFA {
 // Uses principle of longest match, a.k.a. "maximal munch".
 
 
+// Lexical classes and grammar symbols are given dense integer ids, so
+// that the lexer and parser can compare them without comparing strings.
+// Terminals (lexical classes) and nonterminals (names beginning with "#")
+// are numbered separately from 0; nonterminal ids have the NONTERMINAL
+// bit set.  The lexical class "" of discarded tokens is always id 0.
+// The table is shared by all lexers and parsers, and only ever grows.
+
+final class Symbols {
+
+    static final int NONTERMINAL = 1 << 30 ;
+    static final int SKIP = 0 ;
+
+    private static final Map<String,Integer> ids =
+        new ConcurrentHashMap<String,Integer>() ;
+    private static volatile String[] terminals = new String[64] ;
+    private static volatile String[] nonterminals = new String[64] ;
+    private static int terminalCount = 0, nonterminalCount = 0 ;
+
+    static {id ("") ;}
+
+    static int id (String name) {
+    Integer id = ids.get(name) ;
+    return (id != null) ? id : add (name) ;
+    }
+
+    private static synchronized int add (String name) {
+    Integer id = ids.get(name) ;
+    if (id != null) return id ;
+    int result ;
+    if (name.length() > 0 && name.charAt(0) == '#') {
+        if (nonterminalCount == nonterminals.length) {
+        nonterminals = Arrays.copyOf (nonterminals, 2*nonterminalCount) ;
+        }
+        nonterminals[nonterminalCount] = name ;
+        result = NONTERMINAL | nonterminalCount++ ;
+    } else {
+        if (terminalCount == terminals.length) {
+        terminals = Arrays.copyOf (terminals, 2*terminalCount) ;
+        }
+        terminals[terminalCount] = name ;
+        result = terminalCount++ ;
+    }
+    ids.put (name, result) ;
+    return result ;
+    }
+
+    static int[] ids (String[] names) {
+    int[] result = new int[names.length] ;
+    for (int i=0; i<names.length; i++) result[i] = id (names[i]) ;
+    return result ;
+    }
+
+    static String name (int id) {
+    if (isTerminal(id)) return terminals[id] ;
+    else return nonterminals[index(id)] ;
+    }
+
+    static boolean isTerminal (int id) {return (id & NONTERMINAL) == 0 ;}
+    static int index (int id) {return id & ~NONTERMINAL ;}
+    static synchronized int terminalCount () {return terminalCount ;}
+    static synchronized int nonterminalCount () {return nonterminalCount ;}
+}
+
+
 // A *lexical token* is simply a string tagged with the name of its
 // lexical class.
+// Tokens made by GenLexer hold a view of their characters in the input
+// and know their offsets there; the string value is only created if it
+// is asked for.  The lexical class is held as its symbol id.
 
 class LexToken {
-    private final String value, lexClass ;
+    private final int lexClass ;
+    private final CharSequence text ;    // the token's characters
+    private final long start, end ;      // offsets of the token in the input
+    private String value ;               // made from text when needed
+
     LexToken (String value, String lexClass) {
-    this.value = value ; this.lexClass = lexClass ;
+    this (value, Symbols.id(lexClass), 0, value.length()) ;
+    this.value = value ;
+    }
+    LexToken (CharSequence text, int lexClass, long start, long end) {
+    this.text = text ; this.lexClass = lexClass ;
+    this.start = start ; this.end = end ;
     }
-    public String value () {return this.value ;} ;
-    public String lexClass () {return this.lexClass ;} ;
+    public String value () {
+    if (value == null) value = text.toString() ;
+    return value ;
+    } ;
+    public String lexClass () {return Symbols.name(lexClass) ;} ;
+    public int lexClassId () {return lexClass ;} ;
+    public CharSequence chars () {return text ;} ;
+    public long start () {return start ;} ;
+    public long end () {return end ;} ;
 }
 
 // Typical example: new LexToken ("5", "num")
@@ -194,75 +355,412 @@ interface LEX_TOKEN_STREAM {
 }
 
 
+// A stream that hands out tokens lexed beforehand, e.g. to time a parser
+// without its lexer.  If the lexer failed, the tokens are those before
+// the failure, and its exception is thrown in place of the end of input,
+// just where the lexer itself would have thrown it.
+
+class TokenListStream implements LEX_TOKEN_STREAM {
+
+    List<LexToken> tokens ;
+    Exception error ;
+    int next = 0 ;
+
+    TokenListStream (List<LexToken> tokens) {this.tokens = tokens ;}
+
+    TokenListStream (List<LexToken> tokens, Exception error) {
+        this.tokens = tokens ; this.error = error ;
+    }
+
+    // All the tokens of a stream, keeping any exception it ends with.
+    static TokenListStream lexAll (LEX_TOKEN_STREAM tokStream) {
+        List<LexToken> tokens = new ArrayList<LexToken>() ;
+        try {
+            for (LexToken tok = tokStream.pullProperToken(); tok != null;
+                 tok = tokStream.pullProperToken()) {
+                tokens.add (tok) ;
+            }
+        } catch (Exception x) {
+            return new TokenListStream (tokens, x) ;
+        }
+        return new TokenListStream (tokens) ;
+    }
+
+    LexToken next (boolean proper, boolean remove) throws Exception {
+        while (next < tokens.size() && proper &&
+               tokens.get(next).lexClassId() == Symbols.SKIP) {
+            next++ ;
+        }
+        if (next == tokens.size()) {
+            if (error != null) throw error ;
+            return null ;
+        }
+        LexToken tok = tokens.get(next) ;
+        if (remove) next++ ;
+        return tok ;
+    }
+
+    public LexToken pullToken () throws Exception {return next (false, true) ;}
+    public LexToken pullProperToken () throws Exception {return next (true, true) ;}
+    public LexToken peekToken () throws Exception {return next (false, false) ;}
+    public LexToken peekProperToken () throws Exception {return next (true, false) ;}
+}
+
+
+// A stream that can look more than one token ahead, as GenParser does
+// when recovering from an error.  Only proper tokens are passed on.  An
+// exception met while looking ahead is kept, and thrown once the tokens
+// before it have been taken, just where the lexer would have thrown it.
+
+class LookaheadStream implements LEX_TOKEN_STREAM {
+
+    LEX_TOKEN_STREAM tokens ;
+    List<LexToken> ahead = new ArrayList<LexToken>() ;  // tokens peeked at
+    Exception error ;
+
+    LookaheadStream (LEX_TOKEN_STREAM tokens) {this.tokens = tokens ;}
+
+    // The k'th proper token from here, counting from 0, or null if the
+    // input ends (or fails) before it
+    LexToken peek (int k) {
+        while (ahead.size() <= k && error == null) {
+            try {
+                LexToken tok = tokens.pullProperToken() ;
+                if (tok == null) return null ;
+                ahead.add (tok) ;
+            } catch (Exception x) {
+                error = x ;
+            }
+        }
+        return (k < ahead.size()) ? ahead.get(k) : null ;
+    }
+
+    public LexToken peekProperToken () throws Exception {
+        if (!ahead.isEmpty()) return ahead.get(0) ;
+        if (error != null) throw error ;
+        return tokens.peekProperToken() ;
+    }
+
+    public LexToken pullProperToken () throws Exception {
+        if (!ahead.isEmpty()) return ahead.remove(0) ;
+        if (error != null) throw error ;
+        return tokens.pullProperToken() ;
+    }
+
+    public LexToken peekToken () throws Exception {return peekProperToken() ;}
+    public LexToken pullToken () throws Exception {return pullProperToken() ;}
+}
+
+
+// Keywords.  A lexical class such as VAR may contain words that have
+// classes of their own.  Rather than running an acceptor for each keyword
+// alongside the general one, the general acceptor is wrapped in a
+// KeywordAcceptor, and each token it accepts is looked up, once, in a
+// KeywordTable.  The table is a perfect hash: its hash function has a
+// multiplier chosen when the table is built so that no two keywords share
+// a slot, so a lookup costs one hash and at most one comparison.
+
+final class KeywordTable {
+
+    char[][] words ;        // the keyword in each slot, or null
+    int[] classIds ;        // its lexical class
+    int multiplier, shift ;
+    int minLength = Integer.MAX_VALUE, maxLength = 0 ;
+
+    KeywordTable (String[] keywords, String[] lexClasses) {
+        for (String k : keywords) {
+            minLength = Math.min (minLength, k.length()) ;
+            maxLength = Math.max (maxLength, k.length()) ;
+        }
+        int bits = 1 ;
+        while ((1 << bits) < 2 * keywords.length) bits++ ;
+        for (; bits <= 16; bits++) {
+            shift = 32 - bits ;
+            for (multiplier = 0x9E3779B1; multiplier != 0x9E3779B1 + 2 * 4096;
+                 multiplier += 2) {
+                if (fill (keywords, lexClasses, 1 << bits)) return ;
+            }
+        }
+        throw new IllegalArgumentException ("No perfect hash for keywords") ;
+    }
+
+    // Places the keywords, returning false at the first collision.
+    boolean fill (String[] keywords, String[] lexClasses, int size) {
+        words = new char[size][] ;
+        classIds = new int[size] ;
+        for (int i=0; i<keywords.length; i++) {
+            String k = keywords[i] ;
+            int n = k.length() ;
+            int slot = slot (n, k.charAt(0), k.charAt(n/2), k.charAt(n-1)) ;
+            if (words[slot] != null) return false ;
+            words[slot] = k.toCharArray() ;
+            classIds[slot] = Symbols.id (lexClasses[i]) ;
+        }
+        return true ;
+    }
+
+    int slot (int length, int first, int middle, int last) {
+        int key = ((first * 31 + middle) * 31 + last) * 31 + length ;
+        return (key * multiplier) >>> shift ;
+    }
+
+    // The class of the characters of input between from and to: that of
+    // the keyword they spell, or otherwise the one given.
+    int lookup (LexInput input, long from, long to, int otherwise) {
+        int n = (int)(to - from) ;
+        if (n < minLength || n > maxLength) return otherwise ;
+        int slot = slot (n, input.charAt(from), input.charAt(from + n/2),
+                         input.charAt(to - 1)) ;
+        char[] word = words[slot] ;
+        if (word == null || word.length != n) return otherwise ;
+        for (int i=0; i<n; i++) {
+            if (input.charAt(from + i) != word[i]) return otherwise ;
+        }
+        return classIds[slot] ;
+    }
+}
+
+class KeywordAcceptor implements DFA {
+
+    final DFA base ;
+    final KeywordTable table ;
+
+    KeywordAcceptor (DFA base, KeywordTable table) {
+        this.base = base ; this.table = table ;
+    }
+
+    public String lexClass () {return base.lexClass() ;}
+    public int numberOfStates () {return base.numberOfStates() ;}
+    public void reset () {base.reset() ;}
+    public void processChar (char c) throws StateOutOfRange {base.processChar(c) ;}
+    public boolean isAccepting () {return base.isAccepting() ;}
+    public boolean isDead () {return base.isDead() ;}
+}
+
+
 // The following allows a LEX_TOKEN_STREAM object to be created for
 // a given input file and a language-specific repertoire of lexical classes.
 
 public class GenLexer implements LEX_TOKEN_STREAM {
 
-    Reader reader ;       
+    LexInput input ;       
     // for reading characters from input
     DFA[] acceptors ;  
     // array of acceptors for the lexical classes, in order of priority
 
-    GenLexer (Reader reader, DFA[] acceptors) {
-    this.reader = reader ;
+    MergedDFA merged ;
+    // if non-null, a single automaton standing for all the acceptors
+
+    int[] classIds ;
+    // symbol ids of the acceptors' lexical classes
+
+    KeywordTable[] keywords ;
+    // keywords of each KeywordAcceptor, or null if there are none
+
+    // Each lexer runs its own cursors over the acceptors it is given (see
+    // cursor below), so acceptors held in static fields can be shared by
+    // lexers on any number of threads.  A MergedDFA keeps no state at all.
+
+    GenLexer (LexInput input, DFA[] acceptors) {
+    this (input, cursors (acceptors), null) ;
+    }
+
+    GenLexer (LexInput input, MergedDFA merged) {
+    this (input, merged.acceptors, merged) ;
+    }
+
+    private GenLexer (LexInput input, DFA[] acceptors, MergedDFA merged) {
+    this.input = input ;
     this.acceptors = acceptors ;
+    this.merged = merged ;
+    classIds = new int[acceptors.length] ;
+    for (int i=0; i<acceptors.length; i++) {
+        classIds[i] = Symbols.id (acceptors[i].lexClass()) ;
+        if (acceptors[i] instanceof KeywordAcceptor) {
+        if (keywords == null) keywords = new KeywordTable[acceptors.length] ;
+        keywords[i] = ((KeywordAcceptor)acceptors[i]).table ;
+        }
+    }
+    }
+
+    static DFA[] cursors (DFA[] acceptors) {
+    DFA[] result = new DFA[acceptors.length] ;
+    for (int i=0; i<acceptors.length; i++) {
+        result[i] = AcceptorCursor.cursor (acceptors[i]) ;
+    }
+    return result ;
+    }
+
+    GenLexer (Reader reader, DFA[] acceptors) {
+    this (new ReaderInput (reader), acceptors) ;
+    }
+
+    GenLexer (Reader reader, MergedDFA merged) {
+    this (new ReaderInput (reader), merged) ;
     }
 
     LexToken bufferToken ;       // buffer to allow 1-token lookahead
     boolean bufferInUse = false ;
 
-    static final char EOF = (char)65535 ;
+    long tokStart, tokEnd ;      // position of the last token scanned
+    long scanEnd ;               // end of the characters it depended on
+    long scanRead ;              // how far the scan read before backing up
+    LexMetrics metrics ;         // counts, if Metrics.ON
+
+    Diagnostics diagnostics ;
+    // if non-null, characters that cannot begin a token are recorded here
+    // and skipped, rather than ending the lexing with a LexError
+
+    static final int SKIPPED = -2 ;
+    // returned by endScan when it has skipped such a character
 
     // Implementation of longest-match lexer as described in lectures.
-    // We go for simplicity and clarity rather than maximum efficiency.
+    // Rather than building strings as it goes, scanToken remembers only
+    // the input position at the last acceptance point and the acceptor
+    // responsible, and backs up the input to that point at the end.
+    // The token itself is made by the caller, and not at all for tokens
+    // that are about to be discarded.
 
-    LexToken nextToken () 
+    int scanToken () 
     throws LexError, StateOutOfRange, IOException {
-        char c ;                 // current input character
-    String definite = "" ;   // characters up to last acceptance point
-    String maybe = "" ;      // characters since last acceptance point
+    if (!Metrics.ON) {
+        int i ;
+        do {
+        i = (merged != null) ? scanMerged() : scanAcceptors() ;
+        } while (i == SKIPPED) ;
+        return i ;
+    }
+    if (metrics == null) metrics = new LexMetrics (acceptors) ;
+    long begun = System.nanoTime() ;
+    try {
+        int i ;
+        do {
+        i = (merged != null) ? scanMerged() : scanAcceptors() ;
+        } while (i == SKIPPED) ;
+        if (i >= 0) {
+        metrics.token (i, tokStart, tokEnd, scanRead, begun) ;
+        } else metrics.flush() ;
+        return i ;
+    } catch (LexError x) {
+        metrics.flush() ;
+        throw x ;
+    }
+    }
+
+    int scanAcceptors () 
+    throws LexError, StateOutOfRange, IOException {
+        int c ;                  // current input character, or -1
+    long begin = input.position() ;  // start of the token
+    long accepted = begin ;          // position at last acceptance point
         int acceptorIndex = -1 ; // array index of highest priority acceptor
     boolean liveFound = false ;      // flags for use in 
     boolean acceptorFound = false ;  // iteration over acceptors
 
+    input.release (begin) ;
     for (int i=0; i<acceptors.length; i++) {
         acceptors[i].reset() ;
     } ;
     do {
-        c = (char)(reader.read()) ;
+        c = input.read() ;
         acceptorFound = false ;
         liveFound = false ;
-        if (c != EOF) {
-        maybe += c ;    
+        if (c >= 0) {
         for (int i=0; i<acceptors.length; i++) {
-            acceptors[i].processChar(c) ;
+            acceptors[i].processChar((char)c) ;
             if (!acceptors[i].isDead()) {
             liveFound = true ;
             }
             if (!acceptorFound && acceptors[i].isAccepting()) {
             acceptorFound = true ;
             acceptorIndex = i ;
-            definite += maybe ;
-            maybe = "" ;
-            reader.mark(10) ; // register backup point in input
+            accepted = input.position() ; // register backup point
             } ;
         }
         }
-    } while (liveFound && c != EOF) ;
+    } while (liveFound && c >= 0) ;
+    return endScan (c, begin, accepted, acceptorIndex) ;
+    }
+
+    // The same algorithm driving a MergedDFA: one transition per character
+    // stands for a step of every acceptor, and the state's label is the
+    // highest-priority acceptor accepting at that point.
+
+    int scanMerged () 
+    throws LexError, IOException {
+        int c ;
+    long begin = input.position() ;
+    long accepted = begin ;
+        int acceptorIndex = -1 ;
+    int state = 0 ;
+    input.release (begin) ;
+    do {
+        c = input.read() ;
+        if (c >= 0) {
+        state = merged.step (state, (char)c) ;
+        if (merged.run[state] != MergedDFA.NO_RUN) {
+            // the state stays put for a whole run of characters,
+            // which can be passed over in one go
+            input.skip (merged.run[state]) ;
+        }
+        if (merged.label[state] >= 0) {
+            acceptorIndex = merged.label[state] ;
+            accepted = input.position() ;
+        }
+        }
+    } while (!merged.dead[state] && c >= 0) ;
+    return endScan (c, begin, accepted, acceptorIndex) ;
+    }
+
+    int endScan (int c, long begin, long accepted, int acceptorIndex)
+    throws LexError, IOException {
+    // the token depended on everything read, and on end of input if hit
+    scanRead = input.position() ;
+    scanEnd = (c < 0) ? scanRead + 1 : scanRead ;
     if (acceptorIndex >= 0) { // lex token has been found
-        // backup to last acceptance point and output token
-        reader.reset() ;
-        String theLexClass = acceptors[acceptorIndex].lexClass() ;
-        return new LexToken (definite, theLexClass) ;
-    } else if (c == EOF && maybe.equals("")) {
-        // end of input already reached before nextToken was called
-        reader.close() ;
-        return null ;    // by convention, signifies end of input
+        // backup to last acceptance point
+        input.seek (accepted) ;
+        tokStart = begin ;
+        tokEnd = accepted ;
+        return acceptorIndex ;
+    } else if (c < 0 && input.position() == begin) {
+        // end of input already reached before scanToken was called
+        input.close() ;
+        return -1 ;
+    } else if (diagnostics != null) {
+        // skip the first character and try again from the next, which
+        // for MappedInput may be more than one byte on
+        input.seek (begin) ;
+        input.read() ;
+        long next = input.position() ;
+        diagnostics.lexical (begin, next, input.text (begin, next).codePointAt (0)) ;
+        return SKIPPED ;
     } else {
-        reader.close() ;
-        throw new LexError(maybe) ;
+        tokStart = begin ;
+        tokEnd = input.position() ;
+        String nonToken = input.text (begin, tokEnd) ;
+        input.close() ;
+        throw new LexError(nonToken) ;
+    }
+    }
+
+    // The class of the token just scanned by the given acceptor.
+    int tokenClass (int acceptorIndex) {
+    if (keywords == null || keywords[acceptorIndex] == null) {
+        return classIds[acceptorIndex] ;
+    }
+    return keywords[acceptorIndex].lookup
+        (input, tokStart, tokEnd, classIds[acceptorIndex]) ;
+    }
+
+    LexToken makeToken (int acceptorIndex) {
+    return input.token (tokStart, tokEnd, tokenClass (acceptorIndex)) ;
     }
+
+    LexToken nextToken () 
+    throws LexError, StateOutOfRange, IOException {
+    int i = scanToken() ;
+    if (i < 0) return null ;    // by convention, signifies end of input
+    return makeToken (i) ;
     }
 
     public LexToken peekToken () 
@@ -285,14 +783,21 @@ public class GenLexer implements LEX_TOKEN_STREAM {
 
     public LexToken peekProperToken () 
     throws LexError, StateOutOfRange, IOException {
-    LexToken tok = peekToken () ;
-    while (tok != null && tok.lexClass().equals("")) {
-        pullToken () ;
-        tok = peekToken () ;
+    if (bufferInUse) {
+        if (bufferToken == null || bufferToken.lexClassId() != Symbols.SKIP) {
+        return bufferToken ;
+        }
+        bufferInUse = false ;
     }
-    bufferToken = tok ;
+    // tokens of class "" are scanned past without being made, and the
+    // class of the token that is made is looked up only once
+    int i, lexClass = Symbols.SKIP ;
+    do {
+        i = scanToken () ;
+    } while (i >= 0 && (lexClass = tokenClass (i)) == Symbols.SKIP) ;
+    bufferToken = (i < 0) ? null : input.token (tokStart, tokEnd, lexClass) ;
     bufferInUse = true ;
-    return tok ;
+    return bufferToken ;
     }
 
     public LexToken pullProperToken () 
@@ -315,6 +820,9 @@ class DemoLexer extends GenLexer implements LEX_TOKEN_STREAM {
     DemoLexer (Reader reader) {
     super(reader,acceptors) ;
     }
+    DemoLexer (LexInput input) {
+    super(input,acceptors) ;
+    }
 }
 
 // Interactive session for testing the above lexer.
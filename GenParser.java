@@ -8,29 +8,39 @@
 
 import java.io.* ;
 import java.util.* ;
+import java.util.concurrent.ConcurrentHashMap ;
 
 // Recursive class for syntax tree nodes (any grammar).
 // The same class serves for both terminal and non-terminal nodes.
 
-interface TREE {
+// A syntax tree that can be read but not changed, such as a view of a
+// packed tree; TREE adds the means of building one.
+
+interface SYNTAX_TREE {
     String getLabel() ;    // nonterminal symbol or lexical class of terminal
     boolean isTerminal() ;
     String getValue() ;    // only relevant for terminal nodes
-    void setValue(String value) ;
     String[] getRhs() ;    // only relevant for non-terminal nodes
-    TREE[] getChildren() ; // ditto
+    SYNTAX_TREE[] getChildren() ; // ditto
+}
+
+interface TREE extends SYNTAX_TREE {
+    void setValue(String value) ;
+    TREE[] getChildren() ;
     void setRhsChildren(String[] rhs, TREE[] children) ; 
 }
 
 class STree implements TREE {
     
-    String label ;        // Convention: nonterminals begin with "#".
+    int symbol ;          // Convention: nonterminals begin with "#".
+                          // The label is held as its id in Symbols.
     String value ;
     String[] rhs ;
     TREE[] children ;
 
-    public String getLabel() {return label ;}
-    public boolean isTerminal() {return (label.charAt(0) != '#') ;}
+    public String getLabel() {return Symbols.name(symbol) ;}
+    public boolean isTerminal() {return Symbols.isTerminal(symbol) ;}
+    int getSymbol() {return symbol ;}
     public String getValue() {return value ;}
     public void setValue(String value) {this.value = value ;}
     public String[] getRhs() {return rhs ;}
@@ -40,7 +50,8 @@ class STree implements TREE {
     }
 
     // Constructors
-    STree (String label) {this.label = label ;}
+    STree (String label) {this.symbol = Symbols.id(label) ;}
+    STree (int symbol) {this.symbol = symbol ;}
 }
 
 interface PARSER {
@@ -48,15 +59,60 @@ interface PARSER {
     throws Exception ;
     TREE parseTokenStreamAs (LEX_TOKEN_STREAM tokStream, String nonterm) 
     throws Exception ;
+    void parseTokenStream (LEX_TOKEN_STREAM tokStream, PARSE_LISTENER listener) 
+    throws Exception ;
+    void parseTokenStreamAs (LEX_TOKEN_STREAM tokStream, String nonterm,
+                 PARSE_LISTENER listener) 
+    throws Exception ;
+}
+
+// Receives the steps of a derivation as they are made, in place of a tree.
+// Each nonterminal is entered with the right hand side it is expanded by,
+// then come the events for its children in order, and then its exit.
+
+interface PARSE_LISTENER {
+    void enterNonterminal (String symbol, String[] rhs) throws Exception ;
+    void terminal (String lexClass, CharSequence value) throws Exception ;
+    void exitNonterminal (String symbol) throws Exception ;
 }
 
 abstract class GenParser implements PARSER {
 
     // Stubs for methods specific to a particular grammar
     abstract String startSymbol() ;
-    abstract String[] tableEntry (String nonterm, String tokenType) ;
+
+    Grammar grammar() {return null ;}
+    // the productions, if the parse table is to be computed from them
+
+    String[] tableEntry (String nonterm, String tokenType) {
+    LL1Table table = table() ;
+    return (table == null) ? null : table.entry (nonterm, tokenType) ;
+    }
     // LL(1) parse table - should return null for blank entries.
     // In the second argument, null serves as the end-of-input marker '$'.
+    // Need not be overridden by parsers that give their grammar.
+
+    private LL1Table table ;
+    // the table computed from the grammar, used in place of tableEntry
+
+    // The table is found on first use rather than when the parser is made,
+    // so that grammar() may depend on state set up by a subclass's
+    // constructor.  LL1Table's fields are final, so a table seen by
+    // another thread through this field is complete.
+    LL1Table table () {
+    LL1Table t = table ;
+    if (t == null) {
+        Grammar g = grammar() ;
+        if (g == null) return null ;
+        table = t = g.table() ;
+    }
+    return t ;
+    }
+
+    String unitSymbol() {return null ;}
+    // nonterminal of which the input is a sequence, such as a declaration:
+    // its top-level occurrences are timed when Metrics.ON, and parsing can
+    // resume at the start of one after an error (see beginsUnit)
 
     // The LL(1) parsing algorithm, as in lectures
 
@@ -65,74 +121,610 @@ abstract class GenParser implements PARSER {
     return parseTokenStreamAs (tokStream, this.startSymbol()) ;
     }
 
+    // Symbol ids of the right hand sides returned by tableEntry, worked
+    // out the first time each one is used.  They are keyed by content, as
+    // a tableEntry may make a fresh array each time, so there is one
+    // entry per distinct right hand side however they are made.
+    Map<List<String>,int[]> rhsIds = new ConcurrentHashMap<List<String>,int[]>() ;
+
+    int[] rhsIds (String[] rhs) {
+    List<String> key = Arrays.asList (rhs) ;
+    int[] ids = rhsIds.get(key) ;
+    if (ids == null) {
+        ids = Symbols.ids(rhs) ;
+        rhsIds.put (key, ids) ;
+    }
+    return ids ;
+    }
+
+    // The stack of nodes still to be matched or expanded lives in a
+    // ParseContext, which is kept from one parse to the next on the same
+    // thread, so a parser object can be shared and reused freely.  A
+    // parse started while another is in progress on the same thread gets
+    // a fresh context of its own.
+
+    static final ThreadLocal<ParseContext> contexts = new ThreadLocal<ParseContext>() ;
+
+    static ParseContext context () {
+    ParseContext c = contexts.get() ;
+    if (c == null) {
+        c = new ParseContext() ;
+        contexts.set (c) ;
+    }
+    return c.inUse ? new ParseContext() : c ;
+    }
+
+    static final STree[] NO_CHILDREN = new STree[0] ;
+
+    // Looks up the production for the given nonterminal and next token
+    // (null and -1 at end of input), leaving its right hand side in
+    // context.rhs and context.ids.  Returns false for a blank entry.
+    boolean expand (ParseContext context, int nonterm, 
+            LexToken currToken, int currLexClass) {
+    LL1Table table = table() ;
+    if (table != null) {
+        int p = table.predict (nonterm, currLexClass) ;
+        if (p < 0) return false ;
+        context.rhs = table.rhs[p] ;
+        context.ids = table.rhsIds[p] ;
+    } else {
+        String[] rhs = tableEntry (Symbols.name(nonterm), 
+                       currToken == null ? null : currToken.lexClass()) ;
+        if (rhs == null) return false ;
+        context.rhs = rhs ;
+        context.ids = rhsIds (rhs) ;
+    }
+    return true ;
+    }
+
+    static UnexpectedInput unexpected (int expected, LexToken currToken) {
+    return new UnexpectedInput (Symbols.name(expected), 
+        currToken == null ? "end of input" : currToken.lexClass()) ;
+    }
+
+    boolean verbose = true ;
+    // whether to say on System.out how each parse ended
+
+    // Reports whether the whole input was consumed.
+    void finish (LEX_TOKEN_STREAM tokStream) throws Exception {
+        LexToken next = tokStream.pullProperToken() ;
+    if (!verbose) return ;
+    if (next != null) {
+        // non-fatal warning: parse completed before end of input
+        System.out.println ("Warning: " + next.value() +
+                " found after parse completed.");
+    } else {
+        System.out.println ("Parse successful.") ;
+    } ;
+    }
+
     public TREE parseTokenStreamAs 
     (LEX_TOKEN_STREAM tokStream, String nonterm) 
     throws Exception {
-    Stack<TREE> theStack = new Stack<TREE>() ;
-    STree rootNode = new STree (nonterm) ;
-    theStack.push(rootNode) ;
-    STree currNode ;
-    String currLabel ;
-    LexToken currToken ;
-    String currLexClass ;
-    do {
-        currNode = (STree)(theStack.pop()) ;
-        currLabel = currNode.getLabel() ;
-        currToken = tokStream.peekProperToken() ;
-        if (currToken == null) {
-        currLexClass = null ;
-        } else {
-        currLexClass = currToken.lexClass() ;
-        } ;
-        if (currNode.isTerminal()) {
+    STree rootNode = parseTree (tokStream, nonterm) ;
+    finish (tokStream) ;
+    return rootNode ;
+    }
+
+    // The algorithm itself, leaving any tokens after the parse unread.
+
+    STree parseTree (LEX_TOKEN_STREAM tokStream, String nonterm) 
+    throws Exception {
+    return parseTree (tokStream, nonterm, null) ;
+    }
+
+    // If diagnostics is non-null, errors are recorded there and recovered
+    // from (see recover below) rather than thrown.
+
+    STree parseTree (LEX_TOKEN_STREAM tokStream, String nonterm,
+             Diagnostics diagnostics) 
+    throws Exception {
+    TreeBuilder builder = new TreeBuilder() ;
+    parse (tokStream, Symbols.id (nonterm), builder, diagnostics) ;
+    return builder.root ;
+    }
+
+    // The driver shared by every kind of parse.  The stack holds the ids
+    // of the symbols still to be matched or expanded, and below the
+    // children of each expanded nonterminal a marker ~id, which is popped
+    // once they are all done.  What is made of each step is up to the
+    // builder (see ParseBuilder below).
+
+    void parse (LEX_TOKEN_STREAM tokStream, int start, ParseBuilder builder,
+        Diagnostics diagnostics) 
+    throws Exception {
+    ParseContext context = context() ;
+    context.inUse = true ;
+    int[] stack = context.symbols ;
+    int sp = 0 ;
+    try {
+    builder.begin (context, start) ;
+    stack[sp++] = start ;
+    ParseMetrics metrics = Metrics.ON ? new ParseMetrics() : null ;
+    int unit = (unitSymbol() == null) ? -1 : Symbols.id (unitSymbol()) ;
+    // the next token is only looked at again once one has been matched
+    LexToken currToken = tokStream.peekProperToken() ;
+    int currLexClass = (currToken == null) ? -1 : currToken.lexClassId() ;
+    int matched = 0, matchedAtError = -RECOVERED ;
+    while (sp > 0) {
+        if (Metrics.ON) metrics.checkUnit (sp) ;
+        int currSymbol = stack[--sp] ;
+        if (currSymbol < 0) {
+        builder.exit (~currSymbol) ;
+        continue ;
+        }
+        boolean failed ;
+        if (Symbols.isTerminal(currSymbol)) {
         // match expected terminal against input token
-        if (currLexClass != null && 
-            currLexClass.equals(currLabel)) {
-            // all OK
-            currNode.setValue (currToken.value()) ;
-            tokStream.pullToken() ;
-        } else { // report error: expected terminal not found
-            if (currToken == null) {
-            throw new UnexpectedInput 
-                (currLabel, "end of input") ;
-            } else throw new UnexpectedInput
-              (currLabel, currLexClass) ;
-        } 
+        failed = (currLexClass != currSymbol) ;
         } else { 
         // lookup expected nonterminal vs input token in table
-        // OK if currLexClass is null (end-of-input marker)
-        String[] rhs = tableEntry (currLabel, currLexClass) ;
-        if (rhs != null) {
-            STree[] children = new STree[rhs.length] ;
-            for (int i=0; i<rhs.length; i++) {
-            children[i] = new STree(rhs[i]) ;
-            } ;
-            currNode.setRhsChildren(rhs,children) ;
-            for (int i=rhs.length-1; i>=0; i--) {
-            theStack.push(children[i]) ;
+        // OK if currToken is null (end-of-input marker)
+        failed = !expand (context, currSymbol, currToken, currLexClass) ;
+        }
+        if (failed) {
+        // report error: unexpected token, or blank entry in table
+        if (diagnostics == null) throw unexpected (currSymbol, currToken) ;
+        if (matched - matchedAtError >= RECOVERED) {
+            diagnostics.syntax (currToken == null ? -1 : currToken.start(),
+                    currToken == null ? -1 : currToken.end(),
+                    currSymbol, currLexClass) ;
+        }
+        sp = recover (context, builder, sp, tokStream, matched == matchedAtError) ;
+        // errors after a fresh start are not caused by this one
+        matchedAtError = context.atUnit ? matched - RECOVERED : matched ;
+        currToken = tokStream.peekProperToken() ;
+        currLexClass = (currToken == null) ? -1 : currToken.lexClassId() ;
+        } else if (Symbols.isTerminal(currSymbol)) {
+        builder.terminal (currSymbol, currToken) ;
+        matched++ ;
+        tokStream.pullToken() ;
+        currToken = tokStream.peekProperToken() ;
+        currLexClass = (currToken == null) ? -1 : currToken.lexClassId() ;
+        } else { 
+        if (Metrics.ON) {
+            metrics.lookups++ ;
+            if (currSymbol == unit && metrics.unitDepth < 0) {
+            metrics.beginUnit (Symbols.name(currSymbol), sp) ;
             }
-                } else if (currToken == null) {
-                    throw new UnexpectedInput (currLabel, "end of input") ;
-        } else {
-            // report error: blank entry in table
-            throw new UnexpectedInput (currLabel, currLexClass) ;
         }
+        int[] ids = context.ids ;
+        int n = ids.length ;
+        if (sp + n + 1 > stack.length) {
+            stack = context.growSymbols (sp + n + 1) ;
         }
-    } while (!theStack.empty()) ;
-        LexToken next = tokStream.pullProperToken() ;
-    if (next != null) {
-        // non-fatal warning: parse completed before end of input
-        System.out.println ("Warning: " + next.value() +
-                " found after parse completed.");
-    } else {
-        System.out.println ("Parse successful.") ;
-    } ;
+        stack[sp++] = ~currSymbol ;
+        // children are pushed last first, so the first is on top
+        for (int i=n-1; i>=0; i--) stack[sp++] = ids[i] ;
+        builder.expand (currSymbol, context.rhs, ids) ;
+        if (Metrics.ON) {
+            metrics.nodes += n ;
+            metrics.depth (sp) ;
+        }
+        }
+    }
+    if (Metrics.ON) {
+        metrics.checkUnit (0) ;
+        metrics.flush() ;
+    }
+    } finally {
+    builder.end (context) ;
+    context.rhs = null ;
+    context.inUse = false ;
+    }
+    }
+
+    // Recovery from errors, in panic mode.  The node that could not be
+    // matched or expanded becomes an error node: its label is #Error, and
+    // its children are the tokens skipped over, as terminals.  Tokens are
+    // skipped until one of the grammar's synchronising symbols (or the end
+    // of input) that some symbol on the stack can take up.  The nodes above
+    // that one are abandoned, and left unexpanded in the tree, and the
+    // parse goes on from there.  A nonterminal takes up a synchronising
+    // token only by a production that begins with it, unless at the end
+    // of input.  Errors met before RECOVERED more tokens have been matched
+    // are recovered from but not reported, as they are most likely caused
+    // by the last; and if no token at all has been matched since, one is
+    // skipped first, so that the parse always makes progress.
+
+    // A synchronising token may end more than one kind of thing, and
+    // resuming at the wrong one can leave the parse out of step with the
+    // input from then on.  So if the two tokens after it begin a unit
+    // (see unitSymbol and beginsUnit), it is skipped too, and the parse
+    // resumes at the start of the unit, with the stack entry that would
+    // expand to it, and a later error is reported however soon it comes.
+    // This needs the tokens read through a LookaheadStream, as they are
+    // by parseRecovering and the other parses with diagnostics.
+
+    static final String ERROR = "#Error" ;
+    static final int ERROR_ID = Symbols.id (ERROR) ;
+    static final int RECOVERED = 3 ;
+
+    String[] syncSymbols () {return new String[] { } ;}
+    // lexical classes at which parsing can resume after an error,
+    // typically those that end a statement or declaration
+
+    private volatile int[] syncIds ;
+    // the ids of syncSymbols(), found on first use, like the table;
+    // volatile, as an array has no final fields to publish its contents
+
+    boolean beginsUnit (LexToken first, LexToken second) {return false ;}
+    // whether two tokens after a synchronising one are the start of a
+    // unit, and not of anything else that may follow it
+
+    boolean isSync (int lexClass) {
+    int[] ids = syncIds ;
+    if (ids == null) syncIds = ids = Symbols.ids (syncSymbols()) ;
+    for (int id : ids) if (id == lexClass) return true ;
+    return false ;
+    }
+
+    int recover (ParseContext context, ParseBuilder builder, int sp,
+         LEX_TOKEN_STREAM tokStream, boolean skipFirst) 
+    throws Exception {
+    int[] stack = context.symbols ;
+    List<LexToken> skipped = new ArrayList<LexToken>() ;
+    LexToken tok = tokStream.peekProperToken() ;
+    int resume = -1 ;
+    context.atUnit = false ;
+    while (tok != null || !skipFirst) {
+        int lexClass = (tok == null) ? -1 : tok.lexClassId() ;
+        if (!skipFirst && tok != null && isSync (lexClass)
+        && tokStream instanceof LookaheadStream) {
+        LookaheadStream ahead = (LookaheadStream)tokStream ;
+        if (beginsUnit (ahead.peek(1), ahead.peek(2))) {
+            resume = unitStart (context, sp, ahead.peek(1)) ;
+            if (resume >= 0) {
+            skipped.add (tok) ;
+            tokStream.pullToken() ;
+            context.atUnit = true ;
+            break ;
+            }
+        }
+        }
+        if (!skipFirst && (tok == null || isSync (lexClass))) {
+        resume = sp - 1 ;
+        while (resume >= 0 && !takesUp (context, stack[resume], tok, lexClass)) {
+            resume-- ;
+        }
+        if (resume >= 0 || tok == null) break ;
+        }
+        skipFirst = false ;
+        skipped.add (tok) ;
+        tokStream.pullToken() ;
+        tok = tokStream.peekProperToken() ;
+    }
+    String[] rhs = new String[skipped.size()] ;
+    int[] ids = new int[rhs.length] ;
+    for (int i=0; i<rhs.length; i++) {
+        rhs[i] = skipped.get(i).lexClass() ;
+        ids[i] = skipped.get(i).lexClassId() ;
+    }
+    builder.error (rhs, ids, skipped) ;
+    for (int i = sp - 1; i > resume; i--) {
+        if (stack[i] < 0) builder.exit (~stack[i]) ;
+        else builder.abandon() ;
+    }
+    return resume + 1 ;
+    }
+
+    // The top stack entry at which a unit beginning with tok can start:
+    // the unit symbol itself, or a nonterminal whose production for tok
+    // begins with it.  -1 if there is none.
+    int unitStart (ParseContext context, int sp, LexToken tok) {
+    if (unitSymbol() == null) return -1 ;
+    int unit = Symbols.id (unitSymbol()) ;
+    int[] stack = context.symbols ;
+    for (int i = sp - 1; i >= 0; i--) {
+        int symbol = stack[i] ;
+        if (symbol == unit) return i ;
+        if (symbol >= 0 && !Symbols.isTerminal (symbol)
+        && expand (context, symbol, tok, tok.lexClassId())
+        && context.ids.length > 0 && context.ids[0] == unit) {
+        return i ;
+        }
+    }
+    return -1 ;
+    }
+
+    boolean takesUp (ParseContext context, int symbol, LexToken tok, int lexClass) {
+    if (symbol < 0) return false ;      // a marker, not a symbol
+    if (Symbols.isTerminal (symbol)) return symbol == lexClass ;
+    return expand (context, symbol, tok, lexClass)
+        && (tok == null || context.ids.length > 0) ;
+    }
+
+    // Parses the whole input, recording all the errors in diagnostics,
+    // and returns the tree with error nodes where the errors were.  The
+    // lexer should record its errors there too, or it will still throw
+    // a LexError at the first.
+
+    public TREE parseRecovering 
+    (LEX_TOKEN_STREAM tokStream, Diagnostics diagnostics) 
+    throws Exception {
+    return parseRecoveringAs (tokStream, this.startSymbol(), diagnostics) ;
+    }
+
+    public TREE parseRecoveringAs 
+    (LEX_TOKEN_STREAM tokStream, String nonterm, Diagnostics diagnostics) 
+    throws Exception {
+    int before = diagnostics.total() ;
+    tokStream = lookahead (tokStream, diagnostics) ;
+    STree rootNode = parseTree (tokStream, nonterm, diagnostics) ;
+    finish (tokStream, diagnostics, before) ;
     return rootNode ;
     }
 
+    // The stream to read a parse with diagnostics from, so that recover
+    // can look past a synchronising token; others are read as they are.
+    static LEX_TOKEN_STREAM lookahead (LEX_TOKEN_STREAM tokStream, 
+                       Diagnostics diagnostics) {
+    if (diagnostics == null || tokStream instanceof LookaheadStream) {
+        return tokStream ;
+    }
+    return new LookaheadStream (tokStream) ;
+    }
+
+    // Reports how a parse ended that may have recovered from errors,
+    // given how many diagnostics had been recorded before it.
+    void finish (LEX_TOKEN_STREAM tokStream, Diagnostics diagnostics, 
+         int before) throws Exception {
+    if (diagnostics == null || diagnostics.total() == before) {
+        finish (tokStream) ;
+    } else if (verbose) {
+        System.out.println ("Parse found " + (diagnostics.total() - before)
+                + " errors.") ;
+    }
+    }
+
+    // The same algorithm, building the tree in a SyntaxArena.  Errors are
+    // recovered from as by parseRecovering if diagnostics is non-null.
+
+    public SyntaxArena parseToArena (LEX_TOKEN_STREAM tokStream) 
+    throws Exception {
+    return parseToArenaAs (tokStream, this.startSymbol()) ;
+    }
+
+    public SyntaxArena parseToArenaAs 
+    (LEX_TOKEN_STREAM tokStream, String nonterm) 
+    throws Exception {
+    return parseToArenaAs (tokStream, nonterm, null) ;
+    }
+
+    public SyntaxArena parseToArenaAs 
+    (LEX_TOKEN_STREAM tokStream, String nonterm, Diagnostics diagnostics) 
+    throws Exception {
+    int before = (diagnostics == null) ? 0 : diagnostics.total() ;
+    tokStream = lookahead (tokStream, diagnostics) ;
+    ArenaBuilder builder = new ArenaBuilder() ;
+    parse (tokStream, Symbols.id (nonterm), builder, diagnostics) ;
+    finish (tokStream, diagnostics, before) ;
+    builder.arena.trim() ;
+    return builder.arena ;
+    }
+
+    // The same algorithm again, building nothing and reporting each step
+    // to a listener instead, so only the stack grows with the input.
+    // Errors are recovered from if diagnostics is non-null, and each
+    // error node reported as a nonterminal #Error.
+
+    public void parseTokenStream 
+    (LEX_TOKEN_STREAM tokStream, PARSE_LISTENER listener) 
+    throws Exception {
+    parseTokenStreamAs (tokStream, this.startSymbol(), listener) ;
+    }
+
+    public void parseTokenStreamAs 
+    (LEX_TOKEN_STREAM tokStream, String nonterm, PARSE_LISTENER listener) 
+    throws Exception {
+    parseTokenStreamAs (tokStream, nonterm, listener, null) ;
+    }
+
+    public void parseTokenStreamAs 
+    (LEX_TOKEN_STREAM tokStream, String nonterm, PARSE_LISTENER listener,
+     Diagnostics diagnostics) 
+    throws Exception {
+    int before = (diagnostics == null) ? 0 : diagnostics.total() ;
+    tokStream = lookahead (tokStream, diagnostics) ;
+    parse (tokStream, Symbols.id (nonterm), new EventBuilder (listener), diagnostics) ;
+    finish (tokStream, diagnostics, before) ;
+    }
+
     // Perhaps add method for parsing as a specified nonterminal
 }
 
+// The working storage of a parse: the stack of symbols, and a stack of
+// tree nodes or of node numbers in a SyntaxArena, grown as needed and
+// kept for later parses on the same thread, the production last looked
+// up, and the size of the last arena built.
+
+class ParseContext {
+    int[] symbols = new int[256] ;
+    STree[] stack = new STree[256] ;
+    int[] nodes = new int[256] ;
+    boolean inUse ;
+    boolean atUnit ;     // whether the last recovery resumed at a unit
+    String[] rhs ;
+    int[] ids ;
+    int arenaNodes = 64, arenaTokens = 64, arenaChars = 256 ;
+
+    int[] growSymbols (int size) {
+    symbols = Arrays.copyOf (symbols, Math.max (size, 2 * symbols.length)) ;
+    return symbols ;
+    }
+
+    STree[] grow (int size) {
+    stack = Arrays.copyOf (stack, Math.max (size, 2 * stack.length)) ;
+    return stack ;
+    }
+
+    int[] growNodes (int size) {
+    nodes = Arrays.copyOf (nodes, Math.max (size, 2 * nodes.length)) ;
+    return nodes ;
+    }
+}
+
+// What a parse makes of its steps.  GenParser.parse keeps the stack of
+// symbols and tells the builder how each is dealt with.  A builder that
+// makes nodes keeps a stack of them in step with the symbols, markers
+// apart: begin pushes the root, and each call but exit and end is about
+// the node on top, and pops it.
+
+abstract class ParseBuilder {
+    // the parse is of the given symbol
+    abstract void begin (ParseContext context, int symbol) ;
+    // the terminal on top matched tok
+    abstract void terminal (int symbol, LexToken tok) throws Exception ;
+    // the nonterminal on top was expanded by rhs, whose symbols have ids
+    abstract void expand (int symbol, String[] rhs, int[] ids) throws Exception ;
+    // all the children of the nonterminal have been dealt with
+    void exit (int symbol) throws Exception {}
+    // the symbol on top became an error node, with the skipped tokens,
+    // labelled rhs and ids, as its children
+    abstract void error (String[] rhs, int[] ids, List<LexToken> skipped) 
+    throws Exception ;
+    // the symbol on top is left unexpanded, in recovering from an error
+    abstract void abandon () ;
+    // the parse is over, whether or not it finished
+    void end (ParseContext context) {}
+}
+
+class TreeBuilder extends ParseBuilder {
+    STree root ;
+    ParseContext context ;
+    STree[] stack ;
+    int sp = 0 ;
+
+    void begin (ParseContext context, int symbol) {
+    this.context = context ;
+    stack = context.stack ;
+    root = new STree (symbol) ;
+    stack[sp++] = root ;
+    }
+
+    STree pop () {
+    STree node = stack[--sp] ;
+    stack[sp] = null ;
+    return node ;
+    }
+
+    void terminal (int symbol, LexToken tok) {pop().setValue (tok.value()) ;}
+
+    void expand (int symbol, String[] rhs, int[] ids) {
+    STree node = pop() ;
+    int n = ids.length ;
+    STree[] children = (n == 0) ? GenParser.NO_CHILDREN : new STree[n] ;
+    if (sp + n > stack.length) {
+        stack = context.grow (sp + n) ;
+    }
+    for (int i=n-1; i>=0; i--) {
+        STree child = new STree(ids[i]) ;
+        children[i] = child ;
+        stack[sp++] = child ;
+    }
+    node.setRhsChildren (rhs, children) ;
+    }
+
+    void error (String[] rhs, int[] ids, List<LexToken> skipped) {
+    STree node = pop() ;
+    STree[] children = new STree[ids.length] ;
+    for (int i=0; i<ids.length; i++) {
+        children[i] = new STree (ids[i]) ;
+        children[i].setValue (skipped.get(i).value()) ;
+    }
+    node.symbol = GenParser.ERROR_ID ;
+    node.value = null ;
+    node.setRhsChildren (rhs, children) ;
+    }
+
+    void abandon () {pop() ;}
+
+    // drop what an abandoned parse left, so it can be collected
+    void end (ParseContext context) {
+    if (stack != null) Arrays.fill (stack, 0, sp, null) ;
+    }
+}
+
+class ArenaBuilder extends ParseBuilder {
+    SyntaxArena arena ;
+    ParseContext context ;
+    int[] stack ;
+    int sp = 0 ;
+
+    void begin (ParseContext context, int symbol) {
+    this.context = context ;
+    stack = context.nodes ;
+    // sized for a tree like the last one built on this thread
+    arena = new SyntaxArena 
+        (context.arenaNodes, context.arenaTokens, context.arenaChars) ;
+    stack[sp++] = arena.add (symbol) ;
+    }
+
+    void terminal (int symbol, LexToken tok) {
+    arena.setText (stack[--sp], tok.chars()) ;
+    }
+
+    void expand (int symbol, String[] rhs, int[] ids) {
+    int n = ids.length ;
+    int first = arena.expand (stack[--sp], rhs, ids) ;
+    if (sp + n > stack.length) {
+        stack = context.growNodes (sp + n) ;
+    }
+    for (int i=n-1; i>=0; i--) stack[sp++] = first + i ;
+    }
+
+    void error (String[] rhs, int[] ids, List<LexToken> skipped) {
+    int node = stack[--sp] ;
+    arena.kind[node] = GenParser.ERROR_ID ;
+    int first = arena.expand (node, rhs, ids) ;
+    for (int i=0; i<ids.length; i++) {
+        arena.setText (first + i, skipped.get(i).chars()) ;
+    }
+    }
+
+    void abandon () {sp-- ;}
+
+    void end (ParseContext context) {
+    if (arena == null) return ;
+    context.arenaNodes = arena.count ;
+    context.arenaTokens = arena.tokens ;
+    context.arenaChars = arena.textLength ;
+    }
+}
+
+// Builds nothing, passing each step on to a listener.
+
+class EventBuilder extends ParseBuilder {
+    final PARSE_LISTENER listener ;
+
+    EventBuilder (PARSE_LISTENER listener) {this.listener = listener ;}
+
+    void begin (ParseContext context, int symbol) {}
+
+    void terminal (int symbol, LexToken tok) throws Exception {
+    listener.terminal (Symbols.name (symbol), tok.chars()) ;
+    }
+
+    void expand (int symbol, String[] rhs, int[] ids) throws Exception {
+    listener.enterNonterminal (Symbols.name (symbol), rhs) ;
+    }
+
+    void exit (int symbol) throws Exception {
+    listener.exitNonterminal (Symbols.name (symbol)) ;
+    }
+
+    void error (String[] rhs, int[] ids, List<LexToken> skipped) 
+    throws Exception {
+    listener.enterNonterminal (GenParser.ERROR, rhs) ;
+    for (int i=0; i<ids.length; i++) {
+        listener.terminal (rhs[i], skipped.get(i).chars()) ;
+    }
+    listener.exitNonterminal (GenParser.ERROR) ;
+    }
+
+    void abandon () {}
+}
+
 class UnexpectedInput extends Exception {
     public UnexpectedInput (String expected, String found) {
     super ("Parse error: " + found + " encountered where " + 
@@ -141,6 +733,47 @@ class UnexpectedInput extends Exception {
 }
 
 
+// A context-free grammar, held as the right hand sides of the productions
+// for each nonterminal, in the order they were given.  The right hand
+// sides are the same arrays a parse table hands out.
+
+class Grammar {
+
+    String startSymbol ;
+    Map<String,List<String[]>> rules = new LinkedHashMap<String,List<String[]>>() ;
+
+    Grammar (String startSymbol) {this.startSymbol = startSymbol ;}
+
+    Grammar rule (String lhs, String[]... alternatives) {
+    List<String[]> rhss = rules.get(lhs) ;
+    if (rhss == null) {
+        rhss = new ArrayList<String[]>() ;
+        rules.put (lhs, rhss) ;
+    }
+    rhss.addAll (Arrays.asList (alternatives)) ;
+    return this ;
+    }
+
+    Set<String> nonterminals () {return rules.keySet() ;}
+
+    List<String[]> alternatives (String nonterm) {
+    List<String[]> rhss = rules.get(nonterm) ;
+    return (rhss == null) ? Collections.<String[]>emptyList() : rhss ;
+    }
+
+    static boolean isNonterminal (String symbol) {return symbol.startsWith ("#") ;}
+
+    private LL1Table table ;
+
+    // The LL(1) table for the grammar, computed on first use; throws
+    // IllegalArgumentException listing the conflicts if there are any.
+    synchronized LL1Table table () {
+    if (table == null) table = new LL1Table (this) ;
+    return table ;
+    }
+}
+
+
 // Tiny example: Parser for grammar
 // #S -> epsilon | EVEN #S && #S
 // Hint: read EVEN as (, && as ). 
@@ -149,20 +782,15 @@ class EvenAndParser extends GenParser implements PARSER {
 
     String startSymbol() {return "#S" ;}
 
-    String[] epsilon      = new String[] { } ;
-    String[] EVEN_S_AND_S = new String[] {"EVEN", "#S", "&&", "#S"} ;
+    static String[] epsilon      = new String[] { } ;
+    static String[] EVEN_S_AND_S = new String[] {"EVEN", "#S", "&&", "#S"} ;
 
-    String[] tableEntry (String nonterm, String tokClass) {
-    if (nonterm.equals("#S")) {
-        if (tokClass == null) return epsilon ;
-        else if (tokClass.equals("&&")) return epsilon ;
-        else if (tokClass.equals("EVEN")) return EVEN_S_AND_S ;
-        else return null ;
-    } 
-    else return null ;
-    }
-    // N.B. All this use of strings isn't great for efficiency,
-    // but at least it makes for relatively readable code.
+    static Grammar grammar = new Grammar ("#S")
+        .rule ("#S", epsilon, EVEN_S_AND_S) ;
+
+    // The parse table is worked out from the grammar: #S expands to
+    // EVEN #S && #S on EVEN, and to epsilon on && or at end of input.
+    Grammar grammar() {return grammar ;}
 }
 
 // For testing
@@ -172,8 +800,7 @@ class ParserDemo {
     static PARSER evenAndParser = new EvenAndParser() ;
 
     public static void main (String[] args) throws Exception {
-    Reader reader = new BufferedReader (new FileReader (args[0])) ;
-    GenLexer demoLexer = new DemoLexer (reader) ;
+    GenLexer demoLexer = new DemoLexer (new MappedInput (args[0])) ;
     TREE theTree = evenAndParser.parseTokenStream (demoLexer) ;
     }
 }
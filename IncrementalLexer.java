@@ -0,0 +1,196 @@
+
+// File:   IncrementalLexer.java
+// Date:   October 2026
+
+// Keeping the tokens of a document up to date as it is edited.
+// Lexing a token depends only on the text from the token's start up to
+// the furthest character the lexer read while looking for a longer match
+// (its lookahead).  After an edit, every token whose lookahead stops short
+// of the edit is unchanged.  Relexing therefore starts from the first
+// token that looked at the edited text, and stops as soon as a new token
+// ends exactly where an old token after the edit began: from that point
+// the text, and hence the rest of the token sequence, is as before.
+
+// The tokens are held in a gap buffer, with the gap at the last edit.
+// Tokens after the gap store their offset from the end of the text, so
+// their positions shift with an edit at no cost, and the work done per
+// edit depends on the size of the edit rather than of the document.
+// Text that cannot be lexed is kept as an error span; lexing resumes
+// after it, and stream() reports the error when it is reached, just as
+// a GenLexer over the whole text would.
+
+import java.util.Arrays ;
+import java.nio.CharBuffer ;
+
+class IncrementalLexer {
+
+    static final int ERROR = -1 ;   // class of an unlexable span
+
+    MergedDFA dfa ;
+    CharSequence text ;
+    int textLength ;
+
+    // Token records.  Positions before the gap are offsets from the start
+    // of the text, those after it offsets from the end.
+    int[] lexClass = new int[64] ;
+    int[] start = new int[64] ;
+    int[] length = new int[64] ;
+    int[] look = new int[64] ;     // lookahead beyond the end of the token
+    int gapStart = 0, gapEnd = 64 ;
+    int maxLook = 0 ;
+
+    IncrementalLexer (CharSequence text, MergedDFA dfa) {
+        this.dfa = dfa ;
+        this.text = text ;
+        this.textLength = text.length() ;
+        relex (0, 0) ;
+    }
+
+    int size () {return lexClass.length - (gapEnd - gapStart) ;}
+
+    int slot (int i) {return (i < gapStart) ? i : i + gapEnd - gapStart ;}
+
+    int start (int i) {
+        return (i < gapStart) ? start[i] : textLength - start[slot(i)] ;
+    }
+
+    int end (int i) {return start(i) + length[slot(i)] ;}
+
+    boolean isError (int i) {return lexClass[slot(i)] == ERROR ;}
+
+    LexToken token (int i) throws LexError {
+        int s = start(i), e = end(i) ;
+        if (isError(i)) {
+            throw new LexError (text.subSequence(s,e).toString()) ;
+        }
+        return new LexToken (CharBuffer.wrap (text, s, e), lexClass[slot(i)], s, e) ;
+    }
+
+    // The document has been changed to newText by replacing the removed
+    // characters at offset with inserted new ones.  The positions of the
+    // tokens after the edit are kept relative to the end of the text, so
+    // they are only right if the lengths agree; an edit that does not
+    // fit the text is refused with IllegalArgumentException.
+
+    void edit (CharSequence newText, int offset, int removed, int inserted) {
+        if (offset < 0 || removed < 0 || inserted < 0 || offset + removed > textLength
+            || newText.length() != textLength - removed + inserted) {
+            throw new IllegalArgumentException
+                ("Edit of " + removed + " chars at " + offset + " by " + inserted
+                 + " does not turn " + textLength + " chars into " + newText.length()) ;
+        }
+        // find the first token whose lexing read anything from offset on
+        int lo = 0, hi = size() ;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1 ;
+            if (end(mid) > offset) hi = mid ; else lo = mid + 1 ;
+        }
+        int i = lo ;
+        for (int j = i-1; j >= 0 && end(j) + maxLook > offset; j--) {
+            if (end(j) + look[slot(j)] > offset) i = j ;
+        }
+        moveGap (i) ;
+        int pos = (i == 0) ? 0 : end(i-1) ;
+        text = newText ;
+        textLength = newText.length() ;
+        relex (pos, offset + inserted) ;
+    }
+
+    // Lexes from pos, replacing old tokens after the gap, until back in
+    // step with them somewhere at or beyond editEnd.
+
+    void relex (int pos, int editEnd) {
+        GenLexer lexer = new GenLexer (new CharSequenceInput (text, pos, textLength), dfa) ;
+        while (true) {
+            int cls ;
+            try {
+                int k = lexer.scanToken () ;
+                if (k < 0) {
+                    gapEnd = lexClass.length ;   // drop any tokens left
+                    return ;
+                }
+                cls = lexer.tokenClass (k) ;
+            } catch (LexError x) {
+                cls = ERROR ;
+            } catch (Exception x) {
+                throw new IllegalStateException (x) ;   // no I/O in memory
+            }
+            int s = (int)lexer.tokStart, e = (int)lexer.tokEnd ;
+            while (gapEnd < lexClass.length && textLength - start[gapEnd] < e) {
+                gapEnd++ ;
+            }
+            insert (cls, s, e - s, (int)lexer.scanEnd - e) ;
+            if (e >= editEnd && gapEnd < lexClass.length &&
+                textLength - start[gapEnd] == e) {
+                return ;
+            }
+        }
+    }
+
+    void insert (int cls, int s, int len, int lookahead) {
+        if (gapStart == gapEnd) grow () ;
+        lexClass[gapStart] = cls ;
+        start[gapStart] = s ;
+        length[gapStart] = len ;
+        look[gapStart] = lookahead ;
+        maxLook = Math.max (maxLook, lookahead) ;
+        gapStart++ ;
+    }
+
+    // Moves the gap so that tokens 0..i-1 are before it.
+
+    void moveGap (int i) {
+        while (gapStart > i) {
+            gapStart-- ; gapEnd-- ;
+            move (gapStart, gapEnd) ;
+        }
+        while (gapStart < i) {
+            move (gapEnd, gapStart) ;
+            gapStart++ ; gapEnd++ ;
+        }
+    }
+
+    void move (int from, int to) {
+        lexClass[to] = lexClass[from] ;
+        start[to] = textLength - start[from] ;
+        length[to] = length[from] ;
+        look[to] = look[from] ;
+    }
+
+    void grow () {
+        int n = lexClass.length, tail = n - gapEnd ;
+        lexClass = regap (lexClass, tail) ;
+        start = regap (start, tail) ;
+        length = regap (length, tail) ;
+        look = regap (look, tail) ;
+        gapEnd = lexClass.length - tail ;
+    }
+
+    int[] regap (int[] a, int tail) {
+        int[] b = Arrays.copyOf (a, 2 * a.length) ;
+        System.arraycopy (a, a.length - tail, b, b.length - tail, tail) ;
+        return b ;
+    }
+
+    // The current tokens as a stream, as a GenLexer would produce them.
+
+    LEX_TOKEN_STREAM stream () {
+        return new LEX_TOKEN_STREAM () {
+            int next = 0 ;
+            LexToken next (boolean proper, boolean remove) throws LexError {
+                while (next < size() && proper && !isError(next) &&
+                       lexClass[slot(next)] == Symbols.SKIP) {
+                    next++ ;
+                }
+                if (next == size()) return null ;
+                LexToken tok = token (next) ;
+                if (remove) next++ ;
+                return tok ;
+            }
+            public LexToken pullToken () throws LexError {return next (false, true) ;}
+            public LexToken pullProperToken () throws LexError {return next (true, true) ;}
+            public LexToken peekToken () throws LexError {return next (false, false) ;}
+            public LexToken peekProperToken () throws LexError {return next (true, false) ;}
+        } ;
+    }
+}
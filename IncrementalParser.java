@@ -0,0 +1,174 @@
+// File:   IncrementalParser.java
+// Date:   October 2026
+
+// Reparsing a Micro-Haskell program after an edit, reusing the trees of
+// the declarations that did not change.  The program's tokens are cut
+// into declarations as in MH_Parser.parseDeclarations, and each is looked
+// up in a cache by a hash of its tokens' classes and text.  A #Decl tree
+// depends on nothing but those tokens, so a cached tree whose tokens are
+// the same (checked against a copy kept with it) is reused as it is, and
+// only new or changed declarations are parsed.  The result is the tree a
+// full parse would give, with the same right nested #Prog spine.  If the
+// lexer fails, or any declaration fails to parse, the tokens are parsed
+// from the start, with the lexer's exception thrown where it failed, so
+// the error is reported exactly as by a full parse.
+
+// The cache holds trees up to a budget of (estimated) bytes, and evicts
+// the least recently used ones beyond it.  The trees it hands out are
+// shared with later results, so they should not be modified.
+
+import java.util.* ;
+
+class IncrementalParser {
+
+    MH_Parser parser ;
+    long budget ;              // bytes of trees the cache may hold
+    long used = 0 ;
+    long hits = 0, misses = 0 ;
+
+    // A cached tree, with a copy of its tokens' classes and text, so that
+    // a hash match is checked without walking the tree.
+    static class Entry {
+        STree tree ;
+        int[] classes ;
+        char[] text ;
+        long bytes ;
+    }
+
+    // The cached trees by hash, least recently used first.  Trees whose
+    // tokens have the same hash share a bucket.
+    LinkedHashMap<Long,List<Entry>> cache =
+        new LinkedHashMap<Long,List<Entry>> (256, 0.75f, true) ;
+
+    IncrementalParser (MH_Parser parser, long budget) {
+        this.parser = parser ;
+        this.budget = budget ;
+    }
+
+    synchronized TREE parse (LEX_TOKEN_STREAM tokStream) throws Exception {
+        TokenListStream all = TokenListStream.lexAll (tokStream) ;
+        if (all.error != null) return parser.parseTokenStream (all) ;
+        List<LexToken> tokens = all.tokens ;
+        int[] ends = MH_Parser.declarationEnds (tokens) ;
+        STree[] decls = new STree[ends.length] ;
+        for (int i=0; i<ends.length; i++) {
+            int begin = (i == 0) ? 0 : ends[i-1] ;
+            if (begin == ends[i]) continue ;
+            List<LexToken> range = tokens.subList (begin, ends[i]) ;
+            Long key = hash (range) ;
+            decls[i] = lookup (key, range) ;
+            if (decls[i] != null) {
+                hits++ ;
+                continue ;
+            }
+            misses++ ;
+            TokenListStream stream = new TokenListStream (range) ;
+            try {
+                decls[i] = parser.parseTree (stream, "#Decl") ;
+                if (stream.peekToken() != null) {
+                    throw new UnexpectedInput ("end of declaration",
+                                               stream.peekToken().lexClass()) ;
+                }
+            } catch (UnexpectedInput x) {
+                return parser.parseTokenStream (all) ;
+            }
+            store (key, decls[i], range) ;
+        }
+        if (parser.verbose) System.out.println ("Parse successful.") ;
+        return MH_Parser.program (decls) ;
+    }
+
+    static long hash (List<LexToken> range) {
+        long h = range.size() ;
+        for (LexToken tok : range) {
+            h = h * 0x100000001B3L + tok.lexClassId() ;
+            CharSequence chars = tok.chars() ;
+            for (int i=0; i<chars.length(); i++) {
+                h = h * 0x100000001B3L + chars.charAt(i) ;
+            }
+        }
+        return h ;
+    }
+
+    STree lookup (Long key, List<LexToken> range) {
+        List<Entry> bucket = cache.get (key) ;
+        if (bucket == null) return null ;
+        for (Entry e : bucket) {
+            if (matches (e, range)) return e.tree ;
+        }
+        return null ;
+    }
+
+    // Whether the tokens of e are exactly the given ones.
+    static boolean matches (Entry e, List<LexToken> range) {
+        if (e.classes.length != range.size()) return false ;
+        int k = 0 ;
+        for (int i=0; i<e.classes.length; i++) {
+            LexToken tok = range.get(i) ;
+            if (tok.lexClassId() != e.classes[i]) return false ;
+            CharSequence chars = tok.chars() ;
+            int n = chars.length() ;
+            if (k + n > e.text.length) return false ;
+            for (int j=0; j<n; j++) {
+                if (e.text[k++] != chars.charAt(j)) return false ;
+            }
+        }
+        return k == e.text.length ;
+    }
+
+    void store (Long key, STree tree, List<LexToken> range) {
+        Entry entry = new Entry() ;
+        entry.tree = tree ;
+        entry.classes = new int[range.size()] ;
+        StringBuilder text = new StringBuilder() ;
+        for (int i=0; i<range.size(); i++) {
+            entry.classes[i] = range.get(i).lexClassId() ;
+            text.append (range.get(i).chars()) ;
+        }
+        entry.text = new char[text.length()] ;
+        text.getChars (0, text.length(), entry.text, 0) ;
+        entry.bytes = size (tree) + 4 * entry.classes.length + 2 * entry.text.length ;
+        long bytes = entry.bytes ;
+        if (bytes > budget) return ;
+        List<Entry> bucket = cache.get (key) ;
+        if (bucket == null) {
+            bucket = new ArrayList<Entry> (1) ;
+            cache.put (key, bucket) ;
+        }
+        bucket.add (entry) ;
+        used += bytes ;
+        Iterator<List<Entry>> eldest = cache.values().iterator() ;
+        while (used > budget && eldest.hasNext()) {
+            List<Entry> b = eldest.next() ;
+            if (b == bucket) continue ;
+            for (Entry e : b) used -= e.bytes ;
+            eldest.remove() ;
+        }
+    }
+
+    // A rough count of the bytes in a tree: an STree and its share of a
+    // child array per node, and a String per terminal.  The nodes are
+    // visited from a stack of their own, as a declaration the parser
+    // accepts may nest deeper than the Java stack allows.
+    static long size (STree t) {
+        long bytes = 0 ;
+        ArrayDeque<TREE> pending = new ArrayDeque<TREE>() ;
+        pending.push (t) ;
+        while (!pending.isEmpty()) {
+            TREE node = pending.pop() ;
+            bytes += 48 ;
+            if (node.isTerminal()) {
+                String v = node.getValue() ;
+                bytes += 40 + ((v == null) ? 0 : v.length()) ;
+            } else {
+                for (TREE c : node.getChildren()) pending.push (c) ;
+            }
+        }
+        return bytes ;
+    }
+
+    synchronized void clear () {
+        cache.clear() ;
+        used = 0 ;
+    }
+}
@@ -0,0 +1,191 @@
+// File:   LL1Table.java
+// Date:   October 2026
+
+// LL(1) parse tables computed from the productions of a Grammar.
+// The nullable nonterminals and the FIRST and FOLLOW sets are found by
+// iterating to a fixed point, and each production is entered in the rows
+// of its left hand side for the terminals that predict it.  Any entry
+// claimed by two productions is an LL(1) conflict; all of them are
+// reported together when the table is built.
+
+// The table is a dense int[nonterminals][terminals+1] array of production
+// numbers, with -1 for blank entries.  Rows are indexed by the symbol
+// index of the nonterminal, and columns by the symbol id of the terminal
+// plus one, so that column 0 stands for the end-of-input marker '$', and
+// the lexClassId -1 that a parser uses at end of input lands there.
+// Rows for nonterminals of other grammars are null.
+
+// Usage:
+//    java LL1Table
+// checks the Micro-Haskell grammar and prints its table, and should be
+// rerun whenever the productions change.
+
+
+import java.util.* ;
+
+class LL1Table {
+
+    final Grammar grammar ;
+    final String[][] rhs ;     // the right hand side of each production
+    final int[][] rhsIds ;     // the same, as symbol ids
+    final int[] lhs ;          // the left hand side of each production
+    final int[][] table ;
+    final int width ;          // columns in each row
+
+    LL1Table (Grammar grammar) {
+        this.grammar = grammar ;
+
+        // Number the productions, and give every symbol an id
+        List<String[]> rhss = new ArrayList<String[]>() ;
+        List<Integer> lhss = new ArrayList<Integer>() ;
+        Symbols.id (grammar.startSymbol) ;
+        for (String nonterm : grammar.nonterminals()) {
+            for (String[] alt : grammar.alternatives(nonterm)) {
+                rhss.add (alt) ;
+                lhss.add (Symbols.id (nonterm)) ;
+            }
+        }
+        int n = rhss.size() ;
+        rhs = rhss.toArray (new String[n][]) ;
+        rhsIds = new int[n][] ;
+        lhs = new int[n] ;
+        int rows = Symbols.index (Symbols.id (grammar.startSymbol)) + 1 ;
+        int maxTerminal = -1 ;
+        for (int p=0; p<n; p++) {
+            rhsIds[p] = Symbols.ids (rhs[p]) ;
+            lhs[p] = lhss.get(p) ;
+            rows = Math.max (rows, Symbols.index(lhs[p]) + 1) ;
+            for (int s : rhsIds[p]) {
+                if (Symbols.isTerminal(s)) maxTerminal = Math.max (maxTerminal, s) ;
+                else rows = Math.max (rows, Symbols.index(s) + 1) ;
+            }
+        }
+        width = maxTerminal + 2 ;
+
+        // Nullable nonterminals and FIRST sets, as sets of columns
+        boolean[] nullable = new boolean[rows] ;
+        BitSet[] first = new BitSet[rows] ;
+        BitSet[] follow = new BitSet[rows] ;
+        for (int i=0; i<rows; i++) {
+            first[i] = new BitSet() ;
+            follow[i] = new BitSet() ;
+        }
+        boolean changed = true ;
+        while (changed) {
+            changed = false ;
+            for (int p=0; p<n; p++) {
+                int a = Symbols.index (lhs[p]) ;
+                BitSet f = new BitSet() ;
+                boolean empty = first (rhsIds[p], 0, nullable, first, f) ;
+                if (!isSubset (f, first[a])) {first[a].or (f) ; changed = true ;}
+                if (empty && !nullable[a]) {nullable[a] = true ; changed = true ;}
+            }
+        }
+
+        // FOLLOW sets, with '$' following the start symbol
+        follow[Symbols.index (Symbols.id (grammar.startSymbol))].set (0) ;
+        changed = true ;
+        while (changed) {
+            changed = false ;
+            for (int p=0; p<n; p++) {
+                int[] ids = rhsIds[p] ;
+                for (int i=0; i<ids.length; i++) {
+                    if (Symbols.isTerminal(ids[i])) continue ;
+                    BitSet b = follow[Symbols.index(ids[i])] ;
+                    BitSet f = new BitSet() ;
+                    if (first (ids, i+1, nullable, first, f)) {
+                        f.or (follow[Symbols.index(lhs[p])]) ;
+                    }
+                    if (!isSubset (f, b)) {b.or (f) ; changed = true ;}
+                }
+            }
+        }
+
+        // The table itself
+        table = new int[rows][] ;
+        List<String> conflicts = new ArrayList<String>() ;
+        for (int p=0; p<n; p++) {
+            int a = Symbols.index (lhs[p]) ;
+            if (table[a] == null) {
+                table[a] = new int[width] ;
+                Arrays.fill (table[a], -1) ;
+            }
+            BitSet predict = new BitSet() ;
+            if (first (rhsIds[p], 0, nullable, first, predict)) {
+                predict.or (follow[a]) ;
+            }
+            for (int c = predict.nextSetBit(0); c >= 0; c = predict.nextSetBit(c+1)) {
+                int q = table[a][c] ;
+                if (q >= 0) {
+                    conflicts.add (Symbols.name(lhs[p]) + " on " + column(c) + ": "
+                                   + production(q) + "  /  " + production(p)) ;
+                } else table[a][c] = p ;
+            }
+        }
+        if (!conflicts.isEmpty()) {
+            StringBuilder message = new StringBuilder ("Grammar is not LL(1):") ;
+            for (String c : conflicts) message.append("\n    ").append(c) ;
+            throw new IllegalArgumentException (message.toString()) ;
+        }
+    }
+
+    // Adds the FIRST set of ids[from..] to the given set, returning
+    // whether that part of the right hand side can derive epsilon.
+    static boolean first (int[] ids, int from, boolean[] nullable,
+                          BitSet[] first, BitSet into) {
+        for (int i=from; i<ids.length; i++) {
+            if (Symbols.isTerminal(ids[i])) {
+                into.set (ids[i] + 1) ;
+                return false ;
+            }
+            int b = Symbols.index (ids[i]) ;
+            into.or (first[b]) ;
+            if (!nullable[b]) return false ;
+        }
+        return true ;
+    }
+
+    static boolean isSubset (BitSet a, BitSet b) {
+        BitSet extra = (BitSet)a.clone() ;
+        extra.andNot (b) ;
+        return extra.isEmpty() ;
+    }
+
+    // The production to apply for the given nonterminal and lexical class
+    // ids, with -1 for end of input, or -1 if the entry is blank.
+    int predict (int nonterm, int lexClass) {
+        int a = Symbols.index (nonterm) ;
+        int c = lexClass + 1 ;
+        if (a >= table.length || c >= width) return -1 ;
+        int[] row = table[a] ;
+        return (row == null) ? -1 : row[c] ;
+    }
+
+    // The same, by name, as in GenParser.tableEntry.
+    String[] entry (String nonterm, String tokClass) {
+        int p = predict (Symbols.id (nonterm),
+                         tokClass == null ? -1 : Symbols.id (tokClass)) ;
+        return (p < 0) ? null : rhs[p] ;
+    }
+
+    String column (int c) {return (c == 0) ? "$" : Symbols.name (c - 1) ;}
+
+    String production (int p) {
+        StringBuilder b = new StringBuilder (Symbols.name (lhs[p])).append (" ->") ;
+        if (rhs[p].length == 0) b.append (" epsilon") ;
+        for (String s : rhs[p]) b.append(' ').append(s) ;
+        return b.toString() ;
+    }
+
+    public static void main (String[] args) {
+        LL1Table t = MH_Parser.grammar.table() ;
+        for (String nonterm : t.grammar.nonterminals()) {
+            int[] row = t.table[Symbols.index (Symbols.id (nonterm))] ;
+            for (int c=0; c<t.width; c++) {
+                if (row[c] >= 0) {
+                    System.out.println (t.column(c) + "\t" + t.production(row[c])) ;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,268 @@
+
+// File:   LexInput.java
+// Date:   October 2026
+
+// Character sources for GenLexer.
+// A LexInput hands out characters one at a time, like a Reader, but also
+// lets the lexer back up to any position since the start of the current
+// token, however far it has read ahead.  Positions are offsets from the
+// start of the input.  End of input is signalled by read() returning -1,
+// so every char value, including (char)65535, can occur in the input.
+// For MappedInput positions count bytes rather than chars.
+
+
+import java.io.* ;
+import java.nio.* ;
+import java.nio.channels.FileChannel ;
+import java.nio.charset.StandardCharsets ;
+import java.nio.file.* ;
+import java.util.Arrays ;
+
+abstract class LexInput {
+
+    abstract int read () throws IOException ;
+    // next character, or -1 at end of input
+    abstract long position () ;
+    // offset of the next character to be read
+    abstract void seek (long pos) ;
+    // go back to pos, which must not be before the last release point
+    abstract void release (long pos) ;
+    // characters before pos will not be needed again
+    abstract LexToken token (long from, long to, int lexClass) ;
+    // a token made from the characters between from and to
+    abstract String text (long from, long to) ;
+    // the same characters as a string
+    abstract int charAt (long pos) ;
+    // the character at pos, which must lie between the last release point
+    // and the current position (for MappedInput, the byte there)
+    abstract long skip (int run) throws IOException ;
+    // reads past a run of whitespace (MergedDFA.WHITESPACE_RUN) or of
+    // anything but newlines (MergedDFA.LINE_RUN), returning the position
+
+    void close () throws IOException {}
+}
+
+
+// Input from any Reader, read in large blocks into a buffer that holds
+// everything from the last release point onwards.  The buffer grows if a
+// single token (or a failed attempt at one) outgrows it.
+
+class ReaderInput extends LexInput {
+
+    static final int BLOCK = 8192 ;
+
+    Reader reader ;
+    char[] buf = new char[2*BLOCK] ;
+    long base = 0 ;      // offset of buf[0] in the input
+    int pos = 0 ;        // index in buf of the next character
+    int limit = 0 ;      // number of valid characters in buf
+    int keep = 0 ;       // index in buf of the last release point
+    boolean atEnd = false ;
+
+    ReaderInput (Reader reader) {this.reader = reader ;}
+
+    int read () throws IOException {
+        if (pos == limit && !fill()) return -1 ;
+        return buf[pos++] ;
+    }
+
+    // Reads another block, first sliding the window back to the release
+    // point.  Returns false at end of input.
+    boolean fill () throws IOException {
+        if (atEnd) return false ;
+        if (keep > 0) {
+            System.arraycopy (buf, keep, buf, 0, limit - keep) ;
+            base += keep ; pos -= keep ; limit -= keep ; keep = 0 ;
+        }
+        if (buf.length - limit < BLOCK) {
+            buf = Arrays.copyOf (buf, 2 * buf.length) ;
+        }
+        int n ;
+        do {
+            n = reader.read (buf, limit, buf.length - limit) ;
+        } while (n == 0) ;
+        if (n < 0) {
+            atEnd = true ;
+            return false ;
+        }
+        limit += n ;
+        return true ;
+    }
+
+    long position () {return base + pos ;}
+    void seek (long p) {pos = (int)(p - base) ;}
+    void release (long p) {keep = (int)(p - base) ;}
+
+    long skip (int run) throws IOException {
+        do {
+            pos = (run == MergedDFA.WHITESPACE_RUN)
+                ? CharTypes.skipWhitespace (buf, pos, limit)
+                : CharTypes.skipToNewline (buf, pos, limit) ;
+        } while (pos == limit && fill()) ;
+        return position() ;
+    }
+
+    LexToken token (long from, long to, int lexClass) {
+        return new LexToken (text (from, to), lexClass, from, to) ;
+    }
+
+    String text (long from, long to) {
+        return new String (buf, (int)(from - base), (int)(to - from)) ;
+    }
+
+    int charAt (long p) {return buf[(int)(p - base)] ;}
+
+    void close () throws IOException {reader.close() ;}
+}
+
+
+// Input held in memory as a CharSequence.  Any amount of backtracking is
+// free, and tokens are spans of the sequence itself, so no characters
+// are copied unless a token's value is asked for.
+
+class CharSequenceInput extends LexInput {
+
+    CharSequence text ;
+    int pos, end ;
+
+    CharSequenceInput (CharSequence text) {this (text, 0, text.length()) ;}
+
+    // Just the characters between from and to; positions are still
+    // offsets into the whole sequence.
+    CharSequenceInput (CharSequence text, int from, int to) {
+        this.text = text ; this.pos = from ; this.end = to ;
+    }
+
+    int read () {
+        if (pos == end) return -1 ;
+        return text.charAt(pos++) ;
+    }
+
+    long position () {return pos ;}
+    void seek (long p) {pos = (int)p ;}
+    void release (long p) {}
+
+    long skip (int run) {
+        pos = (run == MergedDFA.WHITESPACE_RUN)
+            ? CharTypes.skipWhitespace (text, pos, end)
+            : CharTypes.skipToNewline (text, pos, end) ;
+        return pos ;
+    }
+
+    LexToken token (long from, long to, int lexClass) {
+        return new LexToken (CharBuffer.wrap (text, (int)from, (int)to),
+                             lexClass, from, to) ;
+    }
+
+    String text (long from, long to) {
+        return text.subSequence((int)from, (int)to).toString() ;
+    }
+
+    int charAt (long p) {return text.charAt((int)p) ;}
+}
+
+
+// Input from a memory-mapped file in UTF-8, lexed as bytes without first
+// being decoded to a char array.  ASCII bytes are passed to the lexer as
+// they are; other characters are decoded as they are read, and those
+// outside the Basic Multilingual Plane (or malformed sequences) are read
+// as U+FFFD, which none of our acceptors distinguish from other non-ASCII
+// characters.  Token values are decoded only if they are asked for.
+
+class MappedInput extends LexInput {
+
+    ByteBuffer bytes ;
+    long base ;          // file offset of bytes[0]
+    int pos, end ;
+
+    MappedInput (String fileName) throws IOException {
+        try (FileChannel channel = FileChannel.open (Paths.get(fileName))) {
+            long size = channel.size() ;
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException
+                    (fileName + " is too large to map in one piece") ;
+            }
+            init (channel, 0, size) ;
+        }
+    }
+
+    // Just the bytes between from and to; positions are still file offsets.
+    MappedInput (FileChannel channel, long from, long to) throws IOException {
+        init (channel, from, to) ;
+    }
+
+    void init (FileChannel channel, long from, long to) throws IOException {
+        bytes = channel.map (FileChannel.MapMode.READ_ONLY, from, to - from) ;
+        base = from ;
+        pos = 0 ;
+        end = (int)(to - from) ;
+    }
+
+    int read () {
+        if (pos == end) return -1 ;
+        int b = bytes.get(pos++) ;
+        if (b >= 0) return b ;
+        // lead byte of a multi-byte sequence
+        int more, c ;
+        if ((b & 0xE0) == 0xC0) {more = 1 ; c = b & 0x1F ;}
+        else if ((b & 0xF0) == 0xE0) {more = 2 ; c = b & 0x0F ;}
+        else if ((b & 0xF8) == 0xF0) {more = 3 ; c = 0x110000 ;}
+        else return 0xFFFD ;
+        for (int i=0; i<more; i++) {
+            if (pos == end || (bytes.get(pos) & 0xC0) != 0x80) return 0xFFFD ;
+            c = (c << 6) | (bytes.get(pos++) & 0x3F) ;
+        }
+        return (c > 0xFFFF) ? 0xFFFD : c ;
+    }
+
+    long position () {return base + pos ;}
+    void seek (long p) {pos = (int)(p - base) ;}
+    void release (long p) {}
+
+    long skip (int run) {
+        pos = (run == MergedDFA.WHITESPACE_RUN)
+            ? CharTypes.skipWhitespace (bytes, pos, end)
+            : CharTypes.skipToNewline (bytes, pos, end) ;
+        return position() ;
+    }
+
+    LexToken token (long from, long to, int lexClass) {
+        return new LexToken (new Utf8Text (bytes, (int)(from - base),
+                                           (int)(to - base)),
+                             lexClass, from, to) ;
+    }
+
+    String text (long from, long to) {
+        return new Utf8Text (bytes, (int)(from - base), (int)(to - base)).toString() ;
+    }
+
+    int charAt (long p) {return bytes.get((int)(p - base)) & 0xFF ;}
+}
+
+// The text of a token as a span of UTF-8 bytes, decoded on first use.
+
+class Utf8Text implements CharSequence {
+
+    ByteBuffer bytes ;
+    int from, to ;
+    String decoded ;
+
+    Utf8Text (ByteBuffer bytes, int from, int to) {
+        this.bytes = bytes ; this.from = from ; this.to = to ;
+    }
+
+    public String toString () {
+        if (decoded == null) {
+            byte[] b = new byte[to - from] ;
+            for (int i=0; i<b.length; i++) b[i] = bytes.get(from + i) ;
+            decoded = new String (b, StandardCharsets.UTF_8) ;
+        }
+        return decoded ;
+    }
+
+    public int length () {return toString().length() ;}
+    public char charAt (int i) {return toString().charAt(i) ;}
+    public CharSequence subSequence (int i, int j) {
+        return toString().subSequence(i,j) ;
+    }
+}
@@ -0,0 +1,259 @@
+// File:   MHBatch.java
+// Date:   October 2026
+
+// Lexing and parsing many Micro-Haskell files in one JVM.
+// Files are handed to a fixed pool of one thread per core, each file
+// being lexed and parsed on one thread by its own MH_Lexer and the one
+// shared MH_Parser, whose tables are built once.  Only a few files are
+// in progress beyond the pool size at any time, and the results are
+// reported in the order the files were given, so the output does not
+// depend on the scheduling.
+
+// Usage:
+//    java MHBatch [options] file-or-directory ...
+// with options
+//    -threads N       number of threads (the number of cores)
+//    -tree            build a tree of STree nodes for each file (default)
+//    -arena           build a SyntaxArena instead
+//    -events          build nothing, as with a PARSE_LISTENER
+//    -decls           build a tree, parsing the declarations of each file
+//                     in parallel (for a few large files)
+//    -recover         build a tree, recovering from errors, and report
+//                     every error in each file rather than the first
+//    -cache DIR       keep the parse of each file in DIR (see ParseCache),
+//                     and lex and parse only files not found there; the
+//                     cache holds arenas, so only with -arena, if any of
+//                     the options above is given
+//    -pipelined       lex each file ahead of its parser, on a second pool
+//                     of as many threads (see PipelinedLexer); not with
+//                     -recover, whose lexer and parser share one
+//                     Diagnostics, nor with -cache
+//    -quiet           report only the totals and the failures
+// Directories are searched for files ending in .mh or .hs.  The exit
+// status is 1 if any file failed to lex or parse, and 2 if the options
+// cannot be used together.
+
+// The JVM here predates virtual threads, and lexing and parsing are
+// bound by the CPU rather than by waiting, so platform threads are used.
+
+
+import java.io.* ;
+import java.nio.file.* ;
+import java.util.* ;
+import java.util.concurrent.* ;
+
+class MHBatch {
+
+    static final int TREE = 0, ARENA = 1, EVENTS = 2, DECLS = 3, RECOVER = 4 ;
+
+    static final PARSE_LISTENER ignore = new PARSE_LISTENER() {
+        public void enterNonterminal (String symbol, String[] rhs) {}
+        public void terminal (String lexClass, CharSequence value) {}
+        public void exitNonterminal (String symbol) {}
+    } ;
+
+    int threads = Runtime.getRuntime().availableProcessors() ;
+    int mode = TREE ;
+    boolean quiet = false ;
+    boolean pipelined = false ;
+    MH_Parser parser = new MH_Parser() ;
+    ParseCache cache ;
+    ExecutorService lexers ;     // the lexer threads, if pipelined
+
+    // Each thread records errors in a sink of its own, reused file after file
+    static final ThreadLocal<Diagnostics> diagnostics = new ThreadLocal<Diagnostics>() {
+        protected Diagnostics initialValue () {return new Diagnostics (100) ;}
+    } ;
+
+    // The outcome for one file
+    static class Result {
+        Path file ;
+        long bytes, tokens, nanos ;
+        Exception error ;
+        String[] problems ;      // the errors recovered from, if any
+    }
+
+    // Counts the proper tokens pulled through it.
+    static class CountingStream implements LEX_TOKEN_STREAM {
+        LEX_TOKEN_STREAM stream ;
+        long tokens ;
+        CountingStream (LEX_TOKEN_STREAM stream) {this.stream = stream ;}
+        public LexToken pullToken () throws Exception {
+            LexToken tok = stream.pullToken() ;
+            if (tok != null && tok.lexClassId() != Symbols.SKIP) tokens++ ;
+            return tok ;
+        }
+        public LexToken pullProperToken () throws Exception {
+            LexToken tok = stream.pullProperToken() ;
+            if (tok != null) tokens++ ;
+            return tok ;
+        }
+        public LexToken peekToken () throws Exception {return stream.peekToken() ;}
+        public LexToken peekProperToken () throws Exception {return stream.peekProperToken() ;}
+    }
+
+    // Runs on a pool thread.
+    Result compile (Path file) {
+        Result r = new Result() ;
+        r.file = file ;
+        long begun = System.nanoTime() ;
+        MappedInput input = null ;
+        PipelinedLexer pipeline = null ;
+        try {
+            r.bytes = Files.size (file) ;
+            if (cache != null) {
+                r.tokens = cache.parse(file).tokens ;
+                r.nanos = System.nanoTime() - begun ;
+                return r ;
+            }
+            input = new MappedInput (file.toString()) ;
+            MH_Lexer lexer = new MH_Lexer (input) ;
+            LEX_TOKEN_STREAM source = new CheckedSymbolLexer (lexer) ;
+            if (lexers != null) {
+                source = pipeline = new PipelinedLexer (source, lexers) ;
+            }
+            CountingStream tokens = new CountingStream (source) ;
+            if (mode == RECOVER) recover (lexer, tokens, r) ;
+            else if (mode == ARENA) parser.parseToArena (tokens) ;
+            else if (mode == EVENTS) parser.parseTokenStream (tokens, ignore) ;
+            else if (mode == DECLS) parser.parseDeclarations (tokens) ;
+            else parser.parseTokenStream (tokens) ;
+            r.tokens = tokens.tokens ;
+        } catch (Exception x) {
+            r.error = x ;
+            try {
+                if (input != null) input.close() ;
+            } catch (IOException y) {}
+        } finally {
+            if (pipeline != null) pipeline.close() ;
+        }
+        r.nanos = System.nanoTime() - begun ;
+        return r ;
+    }
+
+    void recover (MH_Lexer lexer, LEX_TOKEN_STREAM tokens, Result r) throws Exception {
+        Diagnostics d = diagnostics.get() ;
+        d.clear() ;
+        lexer.diagnostics = d ;
+        parser.parseRecovering (tokens, d) ;
+        if (d.isEmpty()) return ;
+        r.problems = new String[d.size() + ((d.dropped > 0) ? 1 : 0)] ;
+        for (int i=0; i<d.size(); i++) r.problems[i] = d.message(i) ;
+        if (d.dropped > 0) r.problems[d.size()] = d.dropped + " more errors" ;
+    }
+
+    int run (List<Path> files) throws InterruptedException {
+        ExecutorService pool = Executors.newFixedThreadPool (threads) ;
+        // one lexer thread for each parser thread, so none waits for its lexer
+        if (pipelined) lexers = Executors.newFixedThreadPool (threads) ;
+        ArrayDeque<Future<Result>> pending = new ArrayDeque<Future<Result>>() ;
+        int window = 2 * threads + 1 ;
+        int next = 0, failed = 0 ;
+        long bytes = 0, tokens = 0 ;
+        long begun = System.nanoTime() ;
+        try {
+            while (next < files.size() || !pending.isEmpty()) {
+                while (pending.size() < window && next < files.size()) {
+                    final Path file = files.get(next++) ;
+                    pending.add (pool.submit (new Callable<Result>() {
+                        public Result call () {return compile (file) ;}
+                    })) ;
+                }
+                Result r ;
+                try {
+                    r = pending.remove().get() ;
+                } catch (ExecutionException x) {
+                    throw new RuntimeException (x.getCause()) ;
+                }
+                bytes += r.bytes ;
+                tokens += r.tokens ;
+                if (r.error != null) {
+                    failed++ ;
+                    System.out.println (r.file + ": " + r.error.getMessage()) ;
+                } else if (r.problems != null) {
+                    failed++ ;
+                    for (String p : r.problems) System.out.println (r.file + ": " + p) ;
+                } else if (!quiet) {
+                    System.out.printf ("%s: ok, %d tokens, %.1f ms%n",
+                                       r.file, r.tokens, r.nanos / 1e6) ;
+                }
+            }
+        } finally {
+            pool.shutdownNow() ;
+            if (lexers != null) lexers.shutdownNow() ;
+        }
+        double seconds = (System.nanoTime() - begun) / 1e9 ;
+        System.out.printf ("%d files, %d failed, %d tokens, %.1f MB in %.2f s: "
+                           + "%.1f MB/s, %.0f tokens/s, %d threads%n",
+                           files.size(), failed, tokens, bytes / 1e6, seconds,
+                           bytes / 1e6 / seconds, tokens / seconds, threads) ;
+        if (cache != null) {
+            System.out.println (cache.hits + " found in cache, "
+                                + cache.misses + " parsed") ;
+        }
+        return failed ;
+    }
+
+    static void collect (Path path, List<Path> files) throws IOException {
+        if (!Files.isDirectory (path)) {
+            files.add (path) ;
+            return ;
+        }
+        List<Path> found = new ArrayList<Path>() ;
+        try (DirectoryStream<Path> dir = Files.newDirectoryStream (path)) {
+            for (Path p : dir) found.add (p) ;
+        }
+        Collections.sort (found) ;
+        for (Path p : found) {
+            String name = p.getFileName().toString() ;
+            if (Files.isDirectory (p) || name.endsWith (".mh") || name.endsWith (".hs")) {
+                collect (p, files) ;
+            }
+        }
+    }
+
+    static ParseCache cache (Path dir, MH_Parser parser) throws IOException {
+        return new ParseCache (dir, parser, new ParseCache.Lexers() {
+            public LEX_TOKEN_STREAM open (LexInput input) {
+                return new CheckedSymbolLexer (new MH_Lexer (input)) ;
+            }
+        }) ;
+    }
+
+    public static void main (String[] args) throws Exception {
+        MHBatch batch = new MHBatch() ;
+        List<Path> files = new ArrayList<Path>() ;
+        String modeOption = null ;
+        for (int i=0; i<args.length; i++) {
+            String a = args[i] ;
+            if (a.equals("-threads")) batch.threads = Integer.parseInt (args[++i]) ;
+            else if (a.equals("-tree")) batch.mode = TREE ;
+            else if (a.equals("-arena")) batch.mode = ARENA ;
+            else if (a.equals("-events")) batch.mode = EVENTS ;
+            else if (a.equals("-decls")) batch.mode = DECLS ;
+            else if (a.equals("-recover")) batch.mode = RECOVER ;
+            else if (a.equals("-cache")) batch.cache = cache (Paths.get (args[++i]), batch.parser) ;
+            else if (a.equals("-pipelined")) batch.pipelined = true ;
+            else if (a.equals("-quiet")) batch.quiet = true ;
+            else collect (Paths.get(a), files) ;
+            if (a.equals("-tree") || a.equals("-arena") || a.equals("-events")
+                || a.equals("-decls") || a.equals("-recover")) {
+                modeOption = a ;
+            }
+        }
+        String conflict = null ;
+        if (batch.cache != null && modeOption != null && batch.mode != ARENA) {
+            conflict = "-cache keeps arenas, so cannot be used with " + modeOption ;
+        } else if (batch.cache != null && batch.pipelined) {
+            conflict = "-cache cannot be used with -pipelined" ;
+        } else if (batch.pipelined && batch.mode == RECOVER) {
+            conflict = "-pipelined cannot be used with -recover" ;
+        }
+        if (conflict != null) {
+            System.err.println ("MHBatch: " + conflict) ;
+            System.exit (2) ;
+        }
+        batch.parser.verbose = false ;
+        if (batch.run (files) > 0) System.exit (1) ;
+    }
+}
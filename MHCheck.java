@@ -0,0 +1,257 @@
+// File:   MHCheck.java
+// Date:   October 2026
+
+// A check that the faster ways of lexing and parsing give what the plain
+// ones give.  Each file is lexed by one MH_Lexer and parsed by MH_Parser
+// on one thread, and the result is compared with that of
+//    ParallelLexer      - the tokens, lexed in chunks, and the parse of them
+//    IncrementalParser  - a first parse, and a second that must reuse
+//                         every declaration of the first
+//    ParseCache         - the arena written to a cache and mapped back,
+//                         and the arena found there the second time, with
+//                         the tokens kept in it
+//    PipelinedLexer     - the parse of tokens lexed on another thread
+// Trees are compared node by node: label, value of a terminal, and right
+// hand side and children of a nonterminal.  A file that fails to lex or
+// parse must fail in the same way, with the same message, every way.
+
+// Usage:
+//    java MHCheck file-or-directory ...
+// Directories are searched as by MHBatch.  Each difference found is
+// reported, and the exit status is 1 if there was any, and 2 if no
+// file was given.
+
+
+import java.io.* ;
+import java.nio.file.* ;
+import java.util.* ;
+
+class MHCheck {
+
+    static final int SEQUENTIAL = 0, PARALLEL = 1, INCREMENTAL = 2,
+        CACHED = 3, PIPELINED = 4 ;
+
+    MH_Parser parser = new MH_Parser() ;
+    // With no limit on the cache, which is cleared for each file, nothing
+    // is evicted, so the second parse of a file must reuse every tree
+    IncrementalParser incremental = new IncrementalParser (parser, Long.MAX_VALUE) ;
+    ParseCache cache ;
+    int differences = 0 ;
+
+    // A parse, or the message of the exception that stopped it
+    static class Outcome {
+        SYNTAX_TREE tree ;
+        String error ;
+    }
+
+    MHCheck (Path cacheDir) throws IOException {
+        parser.verbose = false ;
+        cache = MHBatch.cache (cacheDir, parser) ;
+    }
+
+    static LEX_TOKEN_STREAM lexer (Path file) throws IOException {
+        return new CheckedSymbolLexer (new MH_Lexer (new MappedInput (file.toString()))) ;
+    }
+
+    SYNTAX_TREE parse (int way, Path file) throws Exception {
+        switch (way) {
+        case PARALLEL:
+            ParallelLexer chunks = new ParallelLexer (file, MH_Lexer.MHmerged) ;
+            try {
+                return parser.parseTokenStream (new CheckedSymbolLexer (chunks)) ;
+            } finally {
+                chunks.close() ;
+            }
+        case INCREMENTAL:
+            return incremental.parse (lexer (file)) ;
+        case CACHED:
+            return cache.parse(file).root() ;
+        case PIPELINED:
+            PipelinedLexer tokens = new PipelinedLexer (lexer (file)) ;
+            try {
+                return parser.parseTokenStream (tokens) ;
+            } finally {
+                tokens.close() ;
+            }
+        default:
+            return parser.parseTokenStream (lexer (file)) ;
+        }
+    }
+
+    Outcome outcome (int way, Path file) {
+        Outcome o = new Outcome() ;
+        try {
+            o.tree = parse (way, file) ;
+        } catch (Exception x) {
+            o.error = String.valueOf (x) ;
+        }
+        return o ;
+    }
+
+    void differ (Path file, String what) {
+        System.out.println (file + ": " + what) ;
+        differences++ ;
+    }
+
+    void check (Path file) throws Exception {
+        int before = differences ;
+        Outcome plain = outcome (SEQUENTIAL, file) ;
+        ParallelLexer chunks = new ParallelLexer (file, MH_Lexer.MHmerged) ;
+        try {
+            compareTokens (file, "ParallelLexer",
+                           new MH_Lexer (new MappedInput (file.toString())), chunks) ;
+        } finally {
+            chunks.close() ;
+        }
+        compare (file, "ParallelLexer", plain, outcome (PARALLEL, file)) ;
+
+        incremental.clear() ;
+        compare (file, "IncrementalParser", plain, outcome (INCREMENTAL, file)) ;
+        long misses = incremental.misses ;
+        compare (file, "IncrementalParser, reparsed", plain, outcome (INCREMENTAL, file)) ;
+        if (plain.tree != null && incremental.misses != misses) {
+            differ (file, "IncrementalParser reparsed " + (incremental.misses - misses)
+                    + " declarations it had parsed before") ;
+        }
+
+        compare (file, "ParseCache", plain, outcome (CACHED, file)) ;
+        long hits = cache.hits.get() ;
+        Outcome cached = outcome (CACHED, file) ;
+        compare (file, "ParseCache, mapped again", plain, cached) ;
+        if (plain.tree != null) {
+            if (cache.hits.get() == hits) {
+                differ (file, "ParseCache did not find the arena it wrote") ;
+            }
+            if (cached.tree != null) {
+                compareTokens (file, "ParseCache", lexer (file),
+                               ((MappedNode)cached.tree).arena.tokens()) ;
+            }
+        }
+
+        compare (file, "PipelinedLexer", plain, outcome (PIPELINED, file)) ;
+        if (differences == before) {
+            System.out.println (file + ": ok"
+                + ((plain.error == null) ? "" : " (" + plain.error + ")")) ;
+        }
+    }
+
+    void compare (Path file, String way, Outcome expected, Outcome got) {
+        if (expected.error != null || got.error != null) {
+            if (!String.valueOf(expected.error).equals (String.valueOf(got.error))) {
+                differ (file, way + " gave " + describe (got) + " for " + describe (expected)) ;
+            }
+            return ;
+        }
+        String difference = difference (expected.tree, got.tree) ;
+        if (difference != null) differ (file, way + " tree differs " + difference) ;
+    }
+
+    static String describe (Outcome o) {
+        return (o.error == null) ? "a tree" : "\"" + o.error + "\"" ;
+    }
+
+    // Where two trees first differ, in preorder, or null if they do not.
+    // A stack rather than recursion, as trees of long files are deep.
+    static String difference (SYNTAX_TREE a, SYNTAX_TREE b) {
+        ArrayDeque<SYNTAX_TREE> left = new ArrayDeque<SYNTAX_TREE>() ;
+        ArrayDeque<SYNTAX_TREE> right = new ArrayDeque<SYNTAX_TREE>() ;
+        left.push (a) ;
+        right.push (b) ;
+        for (long n = 0; !left.isEmpty(); n++) {
+            a = left.pop() ;
+            b = right.pop() ;
+            String at = "at node " + n + " (" + a.getLabel() + ")" ;
+            if (!a.getLabel().equals (b.getLabel()) || a.isTerminal() != b.isTerminal()) {
+                return at + ": label " + b.getLabel() ;
+            }
+            if (a.isTerminal()) {
+                if (!Objects.equals (a.getValue(), b.getValue())) {
+                    return at + ": value " + b.getValue() + " for " + a.getValue() ;
+                }
+                continue ;
+            }
+            if (!Arrays.equals (a.getRhs(), b.getRhs())) {
+                return at + ": rhs " + Arrays.toString (b.getRhs())
+                    + " for " + Arrays.toString (a.getRhs()) ;
+            }
+            SYNTAX_TREE[] as = a.getChildren(), bs = b.getChildren() ;
+            int count = (as == null) ? 0 : as.length ;
+            if (count != ((bs == null) ? 0 : bs.length)) {
+                return at + ": " + ((bs == null) ? 0 : bs.length)
+                    + " children for " + count ;
+            }
+            for (int i=count-1; i>=0; i--) {
+                left.push (as[i]) ;
+                right.push (bs[i]) ;
+            }
+        }
+        return null ;
+    }
+
+    // Compares the proper tokens of two streams: value, class and place,
+    // and the exception that ends either.
+    void compareTokens (Path file, String way, LEX_TOKEN_STREAM expected,
+                        LEX_TOKEN_STREAM got) {
+        for (long n = 0; ; n++) {
+            LexToken e = null, g = null ;
+            String eError = null, gError = null ;
+            try {
+                e = expected.pullProperToken() ;
+            } catch (Exception x) {
+                eError = String.valueOf (x) ;
+            }
+            try {
+                g = got.pullProperToken() ;
+            } catch (Exception x) {
+                gError = String.valueOf (x) ;
+            }
+            if (eError != null || gError != null) {
+                if (!String.valueOf(eError).equals (String.valueOf(gError))) {
+                    differ (file, way + " token " + n + ": " + gError + " for " + eError) ;
+                }
+                return ;
+            }
+            if (e == null || g == null) {
+                if (e != g) {
+                    differ (file, way + " token " + n + ": " + show (g) + " for " + show (e)) ;
+                }
+                return ;
+            }
+            if (e.lexClassId() != g.lexClassId() || !e.value().equals (g.value())
+                || e.start() != g.start() || e.end() != g.end()) {
+                differ (file, way + " token " + n + ": " + show (g) + " for " + show (e)) ;
+                return ;
+            }
+        }
+    }
+
+    static String show (LexToken t) {
+        if (t == null) return "end of input" ;
+        return t.lexClass() + " \"" + t.value() + "\" at " + t.start() + "-" + t.end() ;
+    }
+
+    static void delete (Path dir) throws IOException {
+        try (DirectoryStream<Path> entries = Files.newDirectoryStream (dir)) {
+            for (Path p : entries) Files.delete (p) ;
+        }
+        Files.delete (dir) ;
+    }
+
+    public static void main (String[] args) throws Exception {
+        List<Path> files = new ArrayList<Path>() ;
+        for (String a : args) MHBatch.collect (Paths.get(a), files) ;
+        if (files.isEmpty()) {
+            System.err.println ("Usage: java MHCheck file-or-directory ...") ;
+            System.exit (2) ;
+        }
+        Path dir = Files.createTempDirectory ("mhcheck") ;
+        MHCheck check = new MHCheck (dir) ;
+        try {
+            for (Path file : files) check.check (file) ;
+        } finally {
+            delete (dir) ;
+        }
+        System.out.println (files.size() + " files, " + check.differences + " differences") ;
+        if (check.differences > 0) System.exit (1) ;
+    }
+}
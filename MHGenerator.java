@@ -0,0 +1,236 @@
+
+// File:   MHGenerator.java
+// Date:   October 2026
+
+// Generating Micro-Haskell programs, of any size, for testing and timing.
+// Declarations are produced by walking the productions of MH_Parser's
+// grammar, choosing among the alternatives at random, and are written out
+// as they are made, so the program is never held in memory.  The rule
+//    #Prog -> #Decl #Prog | epsilon
+// is unrolled into a loop, which stops after the requested number of
+// declarations or bytes.  The same seed always gives the same program.
+
+// The random choices become biased towards each nonterminal's shortest
+// derivation as expressions and types get more deeply nested, and beyond
+// the maximum depth only the shortest derivations are used, so every
+// declaration is finite.
+
+// Errors can be injected at a given rate per declaration: a lexical error
+// is a ` character, which no lexical class accepts, and a syntax error is
+// a missing ';' after the type declaration.
+
+// Usage:
+//    java MHGenerator [options] [file]
+// writing to standard output if no file is given, with options
+//    -seed N          random seed (1)
+//    -decls N         number of declarations
+//    -size N          number of bytes, e.g. 64K, 100M or 3G (1M if
+//                     neither this nor -decls is given)
+//    -depth N         maximum nesting of expressions and types (6)
+//    -ident MIN:MAX   range of identifier lengths (1:8)
+//    -comments P      chance of a comment line after each line (0.1)
+//    -lexerrors P     chance of a lexical error in each declaration (0)
+//    -syntaxerrors P  chance of a syntax error in each declaration (0)
+
+
+import java.io.* ;
+import java.nio.charset.StandardCharsets ;
+import java.util.* ;
+
+class MHGenerator {
+
+    Grammar grammar ;
+    Random random ;
+    Writer out ;
+
+    int maxDepth = 6 ;
+    int minIdent = 1, maxIdent = 8 ;
+    double comments = 0.1 ;
+    double lexErrors = 0, syntaxErrors = 0 ;
+
+    long written = 0 ;                  // chars written so far
+    long lexErrorCount = 0, syntaxErrorCount = 0 ;
+
+    // Height of the shortest derivation from each nonterminal, and the
+    // alternative that gives it.
+    Map<String,Integer> height = new HashMap<String,Integer>() ;
+    Map<String,String[]> shortest = new HashMap<String,String[]>() ;
+
+    // State of the declaration being written
+    String declName ;                   // its name, used by both halves
+    boolean nameNext ;                  // next VAR is the name
+    int lexErrorAt ;                    // terminals left before a lexical error
+    boolean dropSemicolon ;             // leave out the next ';'
+
+    MHGenerator (Grammar grammar, long seed, Writer out) {
+        this.grammar = grammar ;
+        this.random = new Random (seed) ;
+        this.out = out ;
+        heights () ;
+    }
+
+    // Heights by iterating to a fixed point; terminals have height 0.
+    void heights () {
+        boolean changed = true ;
+        while (changed) {
+            changed = false ;
+            for (String nonterm : grammar.nonterminals()) {
+                for (String[] rhs : grammar.alternatives(nonterm)) {
+                    int h = 0 ;
+                    for (String s : rhs) {
+                        if (!Grammar.isNonterminal(s)) continue ;
+                        Integer hs = height.get(s) ;
+                        if (hs == null) {h = -1 ; break ;}
+                        h = Math.max (h, hs) ;
+                    }
+                    if (h < 0) continue ;
+                    Integer old = height.get(nonterm) ;
+                    if (old == null || h + 1 < old) {
+                        height.put (nonterm, h + 1) ;
+                        shortest.put (nonterm, rhs) ;
+                        changed = true ;
+                    }
+                }
+            }
+        }
+    }
+
+    // Writes declarations until either limit is reached.
+    void program (long decls, long bytes) throws IOException {
+        for (long i=0; i<decls && written < bytes; i++) {
+            declaration () ;
+        }
+        out.flush () ;
+    }
+
+    void declaration () throws IOException {
+        declName = identifier () ;
+        lexErrorAt = (random.nextDouble() < lexErrors) ? random.nextInt(8) : -1 ;
+        if (lexErrorAt >= 0) lexErrorCount++ ;
+        dropSemicolon = random.nextDouble() < syntaxErrors ;
+        if (dropSemicolon) syntaxErrorCount++ ;
+        expand ("#Decl", 0) ;
+        if (lexErrorAt >= 0) {   // the declaration was too short to reach it
+            write ("` ") ;
+            lexErrorAt = -1 ;
+        }
+    }
+
+    void expand (String symbol, int depth) throws IOException {
+        if (!Grammar.isNonterminal(symbol)) {
+            terminal (symbol) ;
+            return ;
+        }
+        if (symbol.equals("#TypeDecl") || symbol.equals("#TermDecl")) {
+            nameNext = true ;
+        }
+        if (symbol.equals("#Exp") || symbol.equals("#Type")) depth++ ;
+        List<String[]> rhss = grammar.alternatives(symbol) ;
+        String[] rhs ;
+        if (depth >= maxDepth || random.nextInt(maxDepth) < depth) {
+            rhs = shortest.get(symbol) ;
+        } else {
+            rhs = rhss.get (random.nextInt (rhss.size())) ;
+        }
+        for (String s : rhs) expand (s, depth) ;
+    }
+
+    void terminal (String lexClass) throws IOException {
+        if (lexErrorAt == 0) write ("` ") ;
+        if (lexErrorAt >= 0) lexErrorAt-- ;
+        if (lexClass.equals("VAR")) {
+            write (nameNext ? declName : identifier()) ;
+            nameNext = false ;
+        } else if (lexClass.equals("NUM")) {
+            write (Integer.toString (random.nextInt(10) == 0 ? 0 : random.nextInt(1000000))) ;
+        } else if (lexClass.equals("BOOLEAN")) {
+            write (random.nextBoolean() ? "True" : "False") ;
+        } else if (lexClass.equals(";")) {
+            if (dropSemicolon) {
+                dropSemicolon = false ;
+                write ("\n") ;
+            } else write (";\n") ;
+            if (random.nextDouble() < comments) comment () ;
+            return ;
+        } else {
+            write (lexClass) ;
+        }
+        write (" ") ;
+    }
+
+    void comment () throws IOException {
+        write ("--") ;
+        for (int i = random.nextInt(10); i >= 0; i--) {
+            write (" ") ;
+            write (identifier()) ;
+        }
+        write ("\n") ;
+    }
+
+    // A lowercase identifier of random length other than a keyword.
+    String identifier () {
+        int length = minIdent + random.nextInt (maxIdent - minIdent + 1) ;
+        StringBuilder b = new StringBuilder () ;
+        b.append ((char)('a' + random.nextInt(26))) ;
+        for (int i=1; i<length; i++) {
+            int k = random.nextInt(38) ;
+            b.append (k < 26 ? (char)('a' + k) : k < 36 ? (char)('0' + k - 26)
+                             : k == 36 ? (char)('A' + random.nextInt(26)) : '\'') ;
+        }
+        String id = b.toString() ;
+        if (id.equals("if") || id.equals("then") || id.equals("else")) {
+            return id + "'" ;
+        }
+        return id ;
+    }
+
+    void write (String s) throws IOException {
+        out.write (s) ;
+        written += s.length() ;
+    }
+
+    // Sizes such as 64K, 100M, 3G.
+    static long size (String s) {
+        long unit = 1 ;
+        char last = Character.toUpperCase (s.charAt (s.length() - 1)) ;
+        if (last == 'K') unit = 1L << 10 ;
+        else if (last == 'M') unit = 1L << 20 ;
+        else if (last == 'G') unit = 1L << 30 ;
+        if (unit > 1) s = s.substring (0, s.length() - 1) ;
+        return Long.parseLong(s) * unit ;
+    }
+
+    public static void main (String[] args) throws IOException {
+        long seed = 1, decls = Long.MAX_VALUE, bytes = Long.MAX_VALUE ;
+        String fileName = null ;
+        MHGenerator g = new MHGenerator (MH_Parser.grammar, 0, null) ;
+        for (int i=0; i<args.length; i++) {
+            String a = args[i] ;
+            if (a.equals("-seed")) seed = Long.parseLong (args[++i]) ;
+            else if (a.equals("-decls")) decls = Long.parseLong (args[++i]) ;
+            else if (a.equals("-size")) bytes = size (args[++i]) ;
+            else if (a.equals("-depth")) g.maxDepth = Integer.parseInt (args[++i]) ;
+            else if (a.equals("-ident")) {
+                String[] range = args[++i].split (":") ;
+                g.minIdent = Math.max (1, Integer.parseInt (range[0])) ;
+                g.maxIdent = Math.max (g.minIdent, Integer.parseInt (range[1])) ;
+            }
+            else if (a.equals("-comments")) g.comments = Double.parseDouble (args[++i]) ;
+            else if (a.equals("-lexerrors")) g.lexErrors = Double.parseDouble (args[++i]) ;
+            else if (a.equals("-syntaxerrors")) g.syntaxErrors = Double.parseDouble (args[++i]) ;
+            else fileName = a ;
+        }
+        if (decls == Long.MAX_VALUE && bytes == Long.MAX_VALUE) bytes = 1L << 20 ;
+        g.random = new Random (seed) ;
+        OutputStream stream = (fileName == null)
+            ? System.out : new FileOutputStream (fileName) ;
+        g.out = new BufferedWriter
+            (new OutputStreamWriter (stream, StandardCharsets.UTF_8), 1 << 16) ;
+        g.program (decls, bytes) ;
+        g.out.close () ;
+        if (g.lexErrorCount + g.syntaxErrorCount > 0) {
+            System.err.println (g.lexErrorCount + " lexical and " +
+                                g.syntaxErrorCount + " syntax errors injected") ;
+        }
+    }
+}
@@ -0,0 +1,353 @@
+// File:   MHIR.java
+// Date:   October 2026
+
+// A compact form of a Micro-Haskell program, lowered from its syntax tree.
+// The LL(1) grammar spells out a + b - c as a chain of #Exp1, #Exp2 and
+// #Rest1 nodes, with an epsilon #Rest at the end of every chain and a
+// bracket's worth of nodes for each ( ).  Here each operator, literal,
+// variable, application and conditional is a single node, and the
+// operators associate to the left, as they are meant to.  Nodes are
+// numbered, and held as a tag and up to three ints in parallel arrays:
+//    NUM      a: index of the value in numbers, or for a literal too
+//             big for a long, in bigNumbers
+//    BOOL     a: 1 for True, 0 for False
+//    ARG      a: position of the argument among the declaration's
+//             parameters
+//    FUN      a: index of the declaration named
+//    VAR      a: name id of a variable that is neither of those
+//    ADD, SUB, EQ, LE          a, b: the operands
+//    APP      a: the function, b: the argument
+//    IF       a: condition, b: then branch, c: else branch
+//    INTEGER, BOOLEAN          the types Integer and Bool
+//    ARROW    a, b: the argument and result types
+// A node's operands are numbered before it, so a pass in numerical order
+// meets every operand before its use.  Names are numbered too, and kept
+// once each in names, so no pass needs to compare strings.
+
+// The declarations are numbered in order, and for each d:
+//    declName[d]     its name id
+//    declType[d]     the node for its type
+//    declArity[d]    the number of its parameters, whose name ids are
+//                    params[declParams[d]] onwards
+//    declBody[d]     the node for its body
+// The names in a declaration's type and term parts are not checked to
+// be the same; declName is that of the term part.
+
+// Usage:
+//    MHIR ir = MHIR.lower (parser.parseTokenStream (lexer)) ;
+//    int body = ir.declBody[ir.decl ("main")] ;
+
+import java.math.BigInteger ;
+import java.util.* ;
+
+class MHIR {
+
+    static final int NUM = 0, BOOL = 1, ARG = 2, FUN = 3, VAR = 4,
+        ADD = 5, SUB = 6, EQ = 7, LE = 8, APP = 9, IF = 10,
+        INTEGER = 11, BOOLEAN = 12, ARROW = 13 ;
+
+    static final String[] TAGS = {"NUM", "BOOL", "ARG", "FUN", "VAR",
+        "ADD", "SUB", "EQ", "LE", "APP", "IF", "INTEGER", "BOOLEAN", "ARROW"} ;
+
+    int[] tag = new int[64], a = new int[64], b = new int[64], c = new int[64] ;
+    int count = 0 ;
+
+    long[] numbers = new long[16] ;
+    int numberCount = 0 ;
+    Map<Integer,BigInteger> bigNumbers = new HashMap<Integer,BigInteger>() ;
+
+    String[] names = new String[16] ;
+    int nameCount = 0 ;
+    Map<String,Integer> nameIds = new HashMap<String,Integer>() ;
+
+    int[] declName = new int[16], declType = new int[16],
+        declArity = new int[16], declParams = new int[16], declBody = new int[16] ;
+    int decls = 0 ;
+    int[] params = new int[16] ;
+    int paramCount = 0 ;
+    int[] declByName ;          // by name id, the declaration, or -1
+
+    int size () {return count ;}
+
+    int node (int t, int x, int y, int z) {
+        if (count == tag.length) {
+            int m = 2 * count ;
+            tag = Arrays.copyOf (tag, m) ;
+            a = Arrays.copyOf (a, m) ;
+            b = Arrays.copyOf (b, m) ;
+            c = Arrays.copyOf (c, m) ;
+        }
+        tag[count] = t ; a[count] = x ; b[count] = y ; c[count] = z ;
+        return count++ ;
+    }
+
+    int name (String s) {
+        Integer id = nameIds.get(s) ;
+        if (id != null) return id ;
+        if (nameCount == names.length) names = Arrays.copyOf (names, 2 * nameCount) ;
+        names[nameCount] = s ;
+        nameIds.put (s, nameCount) ;
+        return nameCount++ ;
+    }
+
+    // NUM literals have any number of digits; up to 18 always fit a long.
+    int number (String digits) {
+        if (numberCount == numbers.length) numbers = Arrays.copyOf (numbers, 2 * numberCount) ;
+        if (digits.length() <= 18) {
+            numbers[numberCount] = Long.parseLong (digits) ;
+        } else {
+            BigInteger v = new BigInteger (digits) ;
+            if (v.bitLength() < 64) numbers[numberCount] = v.longValue() ;
+            else bigNumbers.put (numberCount, v) ;
+        }
+        return numberCount++ ;
+    }
+
+    // The value of literal i
+    BigInteger value (int i) {
+        BigInteger v = bigNumbers.get(i) ;
+        return (v != null) ? v : BigInteger.valueOf (numbers[i]) ;
+    }
+
+    // The declaration with the given name, or -1
+    int decl (String s) {
+        Integer id = nameIds.get(s) ;
+        return (id == null) ? -1 : declByName[id] ;
+    }
+
+    // Lowering.  Symbols are compared by id, and the right nested chains
+    // (#Prog, #Args, #TypeRest, #Rest1, #Rest2) are followed by loops.
+
+    static final int
+        PROG = Symbols.id ("#Prog"), DECL = Symbols.id ("#Decl"),
+        TYPE0 = Symbols.id ("#Type0"), EXP = Symbols.id ("#Exp"),
+        EXP3 = Symbols.id ("#Exp3"), ERROR = Symbols.id (GenParser.ERROR),
+        S_VAR = Symbols.id ("VAR"), S_NUM = Symbols.id ("NUM"),
+        S_BOOLEAN = Symbols.id ("BOOLEAN"), S_INTEGER = Symbols.id ("Integer"),
+        S_PLUS = Symbols.id ("+"), S_EQEQ = Symbols.id ("=="),
+        S_IF = Symbols.id ("if"), S_LBR = Symbols.id ("(") ;
+
+    static MHIR lower (SYNTAX_TREE prog) {
+        MHIR ir = new MHIR() ;
+        for (SYNTAX_TREE p = prog; ; ) {
+            SYNTAX_TREE[] ps = children (p) ;
+            if (ps.length == 0) break ;
+            ir.declaration (children (ps[0])) ;
+            p = ps[1] ;
+        }
+        ir.resolve() ;
+        return ir ;
+    }
+
+    static int symbol (SYNTAX_TREE t) {
+        if (t instanceof STree) return ((STree)t).getSymbol() ;
+        if (t instanceof ArenaNode) return ((ArenaNode)t).getSymbol() ;
+        if (t instanceof MappedNode) return ((MappedNode)t).getSymbol() ;
+        return Symbols.id (t.getLabel()) ;
+    }
+
+    static SYNTAX_TREE[] children (SYNTAX_TREE t) {
+        SYNTAX_TREE[] cs = t.getChildren() ;
+        if (cs == null || symbol(t) == ERROR) {
+            throw new IllegalArgumentException
+                ("Cannot lower a tree with errors, at " + t.getLabel()) ;
+        }
+        return cs ;
+    }
+
+    // decl holds the #TypeDecl and #TermDecl
+    void declaration (SYNTAX_TREE[] decl) {
+        SYNTAX_TREE[] typeDecl = children (decl[0]) ;      // VAR :: #Type ;
+        SYNTAX_TREE[] termDecl = children (decl[1]) ;      // VAR #Args = #Exp ;
+        if (decls == declName.length) {
+            int m = 2 * decls ;
+            declName = Arrays.copyOf (declName, m) ;
+            declType = Arrays.copyOf (declType, m) ;
+            declArity = Arrays.copyOf (declArity, m) ;
+            declParams = Arrays.copyOf (declParams, m) ;
+            declBody = Arrays.copyOf (declBody, m) ;
+        }
+        int d = decls++ ;
+        declName[d] = name (termDecl[0].getValue()) ;
+        declType[d] = lower (typeDecl[2], L_TYPE, d) ;
+        declParams[d] = paramCount ;
+        for (SYNTAX_TREE[] args = children (termDecl[1]); args.length > 0;
+             args = children (args[1])) {
+            if (paramCount == params.length) params = Arrays.copyOf (params, 2 * paramCount) ;
+            params[paramCount++] = name (args[0].getValue()) ;
+        }
+        declArity[d] = paramCount - declParams[d] ;
+        declBody[d] = lower (termDecl[3], L_EXP, d) ;
+    }
+
+    // Types and expressions are lowered without recursion, as brackets
+    // and conditionals nest as deeply as the input likes and the parser,
+    // whose stack is an array, lets them.  Instead there is a stack of
+    // jobs, each a tree to lower as a given nonterminal, or ~t for a node
+    // of tag t to be made from the values on top of the value stack, which
+    // holds the nodes lowered so far.  The jobs for a tree are pushed in
+    // order and then turned over, so the first is done first and nodes
+    // are numbered as a recursive descent would number them.
+
+    static final int L_TYPE = 0, L_TYPE0 = 1, L_EXP = 2, L_EXP1 = 3,
+        L_EXP2 = 4, L_EXP3 = 5 ;
+
+    SYNTAX_TREE[] jobTree = new SYNTAX_TREE[64] ;
+    int[] jobKind = new int[64] ;
+    int jobs = 0 ;
+    int[] values = new int[64] ;
+    int valueCount = 0 ;
+
+    void job (SYNTAX_TREE t, int kind) {
+        if (jobs == jobKind.length) {
+            jobTree = Arrays.copyOf (jobTree, 2 * jobs) ;
+            jobKind = Arrays.copyOf (jobKind, 2 * jobs) ;
+        }
+        jobTree[jobs] = t ;
+        jobKind[jobs++] = kind ;
+    }
+
+    // Turns over the jobs pushed since there were from jobs
+    void turn (int from) {
+        for (int i = from, j = jobs - 1; i < j; i++, j--) {
+            SYNTAX_TREE t = jobTree[i] ; jobTree[i] = jobTree[j] ; jobTree[j] = t ;
+            int k = jobKind[i] ; jobKind[i] = jobKind[j] ; jobKind[j] = k ;
+        }
+    }
+
+    void push (int n) {
+        if (valueCount == values.length) values = Arrays.copyOf (values, 2 * valueCount) ;
+        values[valueCount++] = n ;
+    }
+
+    // Lowers t as a #Type (L_TYPE) or an #Exp (L_EXP) of declaration d
+    int lower (SYNTAX_TREE t, int kind, int d) {
+        job (t, kind) ;
+        while (jobs > 0) {
+            jobs-- ;
+            int k = jobKind[jobs] ;
+            SYNTAX_TREE x = jobTree[jobs] ;
+            jobTree[jobs] = null ;
+            if (k < 0) {
+                int arity = (~k == IF) ? 3 : 2 ;
+                valueCount -= arity ;
+                int z = (arity == 3) ? values[valueCount + 2] : 0 ;
+                push (node (~k, values[valueCount], values[valueCount + 1], z)) ;
+                continue ;
+            }
+            SYNTAX_TREE[] cs = children (x) ;
+            int from = jobs ;
+            switch (k) {
+            case L_TYPE:
+                // #Type -> #Type0 #TypeRest, #TypeRest -> -> #Type | epsilon,
+                // with -> to the right
+                int arrows = 0 ;
+                job (cs[0], L_TYPE0) ;
+                for (SYNTAX_TREE[] rest = children (cs[1]); rest.length > 0;
+                     rest = children (cs[1]), arrows++) {
+                    cs = children (rest[1]) ;
+                    job (cs[0], L_TYPE0) ;
+                }
+                for (int i=0; i<arrows; i++) job (null, ~ARROW) ;
+                break ;
+            case L_TYPE0:
+                int s = symbol (cs[0]) ;
+                if (s == S_LBR) job (cs[1], L_TYPE) ;
+                else push (node ((s == S_INTEGER) ? INTEGER : BOOLEAN, 0, 0, 0)) ;
+                break ;
+            case L_EXP:
+                // #Exp -> #Exp0 | if #Exp then #Exp else #Exp
+                if (symbol (cs[0]) == S_IF) {
+                    job (cs[1], L_EXP) ;
+                    job (cs[3], L_EXP) ;
+                    job (cs[5], L_EXP) ;
+                    job (null, ~IF) ;
+                    break ;
+                }
+                // #Exp0 -> #Exp1 #Rest0
+                SYNTAX_TREE[] e0 = children (cs[0]) ;
+                job (e0[0], L_EXP1) ;
+                SYNTAX_TREE[] rest0 = children (e0[1]) ;
+                if (rest0.length > 0) {
+                    job (rest0[1], L_EXP1) ;
+                    job (null, ~((symbol (rest0[0]) == S_EQEQ) ? EQ : LE)) ;
+                }
+                break ;
+            case L_EXP1:
+                // #Exp1 -> #Exp2 #Rest1, #Rest1 -> + #Exp2 #Rest1 | - #Exp2 #Rest1 | epsilon
+                job (cs[0], L_EXP2) ;
+                for (SYNTAX_TREE[] rest = children (cs[1]); rest.length > 0; rest = children (rest[2])) {
+                    job (rest[1], L_EXP2) ;
+                    job (null, ~((symbol (rest[0]) == S_PLUS) ? ADD : SUB)) ;
+                }
+                break ;
+            case L_EXP2:
+                // #Exp2 -> #Exp3 #Rest2, #Rest2 -> #Exp3 #Rest2 | epsilon
+                job (cs[0], L_EXP3) ;
+                for (SYNTAX_TREE[] rest = children (cs[1]); rest.length > 0; rest = children (rest[1])) {
+                    job (rest[0], L_EXP3) ;
+                    job (null, ~APP) ;
+                }
+                break ;
+            case L_EXP3:
+                // #Exp3 -> VAR | NUM | BOOLEAN | ( #Exp )
+                if (symbol (cs[0]) == S_LBR) job (cs[1], L_EXP) ;
+                else push (atom (cs[0], d)) ;
+                break ;
+            }
+            turn (from) ;
+        }
+        return values[--valueCount] ;
+    }
+
+    int atom (SYNTAX_TREE x, int d) {
+        int s = symbol (x) ;
+        if (s == S_NUM) return node (NUM, number (x.getValue()), 0, 0) ;
+        if (s == S_BOOLEAN) return node (BOOL, x.getValue().equals("True") ? 1 : 0, 0, 0) ;
+        int n = name (x.getValue()) ;
+        for (int i = declArity[d] - 1; i >= 0; i--) {
+            if (params[declParams[d] + i] == n) return node (ARG, i, 0, 0) ;
+        }
+        return node (VAR, n, 0, 0) ;
+    }
+
+    // Once all the declarations are known, a VAR naming one becomes a FUN.
+    void resolve () {
+        declByName = new int[nameCount] ;
+        Arrays.fill (declByName, -1) ;
+        for (int d=0; d<decls; d++) declByName[declName[d]] = d ;
+        for (int n=0; n<count; n++) {
+            if (tag[n] == VAR && declByName[a[n]] >= 0) {
+                tag[n] = FUN ;
+                a[n] = declByName[a[n]] ;
+            }
+        }
+    }
+
+    // A node written out in prefix form, for inspection.  Unlike lowering
+    // this recurses, once per level of the node.
+    String show (int n) {
+        StringBuilder s = new StringBuilder() ;
+        show (n, s) ;
+        return s.toString() ;
+    }
+
+    void show (int n, StringBuilder s) {
+        switch (tag[n]) {
+        case NUM: s.append (value (a[n])) ; return ;
+        case BOOL: s.append (a[n] == 1 ? "True" : "False") ; return ;
+        case ARG: s.append ("#").append (a[n]) ; return ;
+        case FUN: s.append (names[declName[a[n]]]) ; return ;
+        case VAR: s.append (names[a[n]]) ; return ;
+        case INTEGER: s.append ("Integer") ; return ;
+        case BOOLEAN: s.append ("Bool") ; return ;
+        }
+        s.append ("(").append (TAGS[tag[n]]) ;
+        int arity = (tag[n] == IF) ? 3 : 2 ;
+        for (int i=0; i<arity; i++) {
+            s.append (" ") ;
+            show ((i == 0) ? a[n] : (i == 1) ? b[n] : c[n], s) ;
+        }
+        s.append (")") ;
+    }
+}
@@ -3,14 +3,17 @@
 // Date:   October 2013, subsequently modified each year
 
 // Java template file for parser component of Informatics 2A Assignment 2 (2013).
-// Students should add a method body for the LL(1) parse table for Micro-Haskell.
+// The LL(1) parse table for Micro-Haskell is computed from its grammar.
 
 
 import java.io.* ;
+import java.util.* ;
+import java.util.concurrent.* ;
  
 class MH_Parser extends GenParser implements PARSER {
 
     String startSymbol() {return "#Prog" ;}
+    String unitSymbol() {return "#Decl" ;}
 
     // Right hand sides of all productions in grammar:
 
@@ -39,24 +42,212 @@ class MH_Parser extends GenParser implements PARSER {
     static String[] BOOLEAN              = new String[] {"BOOLEAN"} ;
     static String[] lbr_Exp_rbr          = new String[] {"(", "#Exp", ")"} ;
 
-    // may add auxiliary methods here if desired
+    // The productions themselves:
 
-    String[] tableEntry (String nonterm, String tokClass) {
-        // add main code here
+    static Grammar grammar = new Grammar ("#Prog")
+        .rule ("#Prog",     Decl_Prog, epsilon)
+        .rule ("#Decl",     TypeDecl_TermDecl)
+        .rule ("#TypeDecl", VAR_has_Type)
+        .rule ("#Type",     Type0_TypeRest)
+        .rule ("#TypeRest", arrow_Type, epsilon)
+        .rule ("#Type0",    Integer, Bool, lbr_Type_rbr)
+        .rule ("#TermDecl", VAR_Args_eq_Exp)
+        .rule ("#Args",     VAR_Args, epsilon)
+        .rule ("#Exp",      Exp0, if_then_else)
+        .rule ("#Exp0",     Exp1_Rest0)
+        .rule ("#Rest0",    eqeq_Exp1, lteq_Exp1, epsilon)
+        .rule ("#Exp1",     Exp2_Rest1)
+        .rule ("#Rest1",    plus_Exp2_Rest1, minus_Exp2_Rest1, epsilon)
+        .rule ("#Exp2",     Exp3_Rest2)
+        .rule ("#Rest2",    Exp3_Rest2, epsilon)
+        .rule ("#Exp3",     VAR, NUM, BOOLEAN, lbr_Exp_rbr) ;
+
+    // The LL(1) parse table is computed from the productions by LL1Table.
+
+    Grammar grammar() {return grammar ;}
+
+    // After an error, parsing resumes at a ';', which ends both halves of
+    // a declaration: a declaration with an error in it is skipped to its
+    // end, or to the end of its type declaration, and the next one is
+    // parsed as normal.  Which half a ';' ends is told by what follows:
+    // only a declaration begins with a VAR and then "::".  So a ';' with
+    // those after it puts the parse back at the start of a declaration,
+    // even if an error, such as a missing ';', has thrown the parser out
+    // of step with the halves.
+
+    String[] syncSymbols() {return new String[] {";"} ;}
+
+    static final int VAR_ID = Symbols.id ("VAR"), HAS_TYPE_ID = Symbols.id ("::") ;
+
+    boolean beginsUnit (LexToken first, LexToken second) {
+    return first != null && second != null 
+        && first.lexClassId() == VAR_ID && second.lexClassId() == HAS_TYPE_ID ;
+    }
+
+    // Parsing declarations in parallel.  A #Prog is a sequence of #Decls,
+    // each a type declaration and a term declaration, and as neither a
+    // type nor an expression contains ';', every second ';' token ends a
+    // declaration.  The program is lexed in full, cut there, and each
+    // piece parsed as a #Decl on a ForkJoin pool.  The #Decl trees are
+    // then strung together into the #Prog -> #Decl #Prog chain that a
+    // sequential parse would build.  If the lexer fails, or any piece
+    // fails to parse, the tokens are parsed again sequentially, with the
+    // lexer's exception thrown where it failed, so the error reported is
+    // the one the sequential parser would report: a syntax error before
+    // a lexical one is reported first.
+
+    static final int DECLS_PER_TASK = 256 ;
+
+    TREE parseDeclarations (LEX_TOKEN_STREAM tokStream) throws Exception {
+    TokenListStream all = TokenListStream.lexAll (tokStream) ;
+    if (all.error != null) return parseTokenStream (all) ;
+    List<LexToken> tokens = all.tokens ;
+    int[] ends = declarationEnds (tokens) ;
+    int decls = ends.length ;
+    STree[] trees = new STree[decls] ;
+    try {
+        ForkJoinPool.commonPool().invoke 
+        (new DeclTask (tokens, ends, trees, 0, decls)) ;
+    } catch (RuntimeException x) {
+        // ForkJoin may wrap the failure again on the way back
+        Throwable cause = x ;
+        while (cause != null && !(cause instanceof UnexpectedInput)) {
+        cause = cause.getCause() ;
+        }
+        if (cause == null) throw x ;
+        return parseTokenStream (all) ;
+    }
+    if (verbose) System.out.println ("Parse successful.") ;
+    return program (trees) ;
+    }
+
+    // The end of each declaration in tokens.  An unfinished declaration
+    // at the end, which will fail to parse, counts as one more; so does
+    // an empty program, whose one declaration is empty.
+    static int[] declarationEnds (List<LexToken> tokens) {
+    int semicolon = Symbols.id (";") ;
+    int[] ends = new int[16] ;
+    int decls = 0, semicolons = 0 ;
+    for (int i=0; i<tokens.size(); i++) {
+        if (tokens.get(i).lexClassId() == semicolon && ++semicolons % 2 == 0) {
+        if (decls == ends.length) ends = Arrays.copyOf (ends, 2 * decls) ;
+        ends[decls++] = i + 1 ;
+        }
+    }
+    if (decls == 0 || ends[decls-1] < tokens.size()) {
+        if (decls == ends.length) ends = Arrays.copyOf (ends, decls + 1) ;
+        ends[decls++] = tokens.size() ;
+    }
+    return Arrays.copyOf (ends, decls) ;
+    }
+
+    // The #Prog tree made of the given #Decl trees, skipping nulls.
+    static STree program (STree[] decls) {
+    STree prog = new STree ("#Prog") ;
+    prog.setRhsChildren (epsilon, NO_CHILDREN) ;
+    for (int i=decls.length-1; i>=0; i--) {
+        if (decls[i] == null) continue ;     // an empty program
+        STree p = new STree ("#Prog") ;
+        p.setRhsChildren (Decl_Prog, new STree[] {decls[i], prog}) ;
+        prog = p ;
+    }
+    return prog ;
+    }
+
+    // Parses declarations from up to to, halving the range until it is
+    // small enough to do in one go.
+    class DeclTask extends RecursiveAction {
+    private static final long serialVersionUID = 1L ;
+    List<LexToken> tokens ;
+    int[] ends ;
+    STree[] trees ;
+    int from, to ;
+
+    DeclTask (List<LexToken> tokens, int[] ends, STree[] trees, int from, int to) {
+        this.tokens = tokens ; this.ends = ends ; this.trees = trees ;
+        this.from = from ; this.to = to ;
+    }
+
+    protected void compute () {
+        if (to - from > DECLS_PER_TASK) {
+        int mid = (from + to) >>> 1 ;
+        invokeAll (new DeclTask (tokens, ends, trees, from, mid),
+               new DeclTask (tokens, ends, trees, mid, to)) ;
+        return ;
+        }
+        try {
+        for (int i=from; i<to; i++) {
+            int begin = (i == 0) ? 0 : ends[i-1] ;
+            if (begin == ends[i]) continue ;
+            TokenListStream range = new TokenListStream 
+            (tokens.subList (begin, ends[i])) ;
+            trees[i] = parseTree (range, "#Decl") ;
+            if (range.peekToken() != null) {
+            throw new UnexpectedInput ("end of declaration", 
+                           range.peekToken().lexClass()) ;
+            }
+        }
+        } catch (Exception x) {
+        throw new RuntimeException (x) ;
+        }
+    }
     }
 }
 
 
-// For testing
+// For testing: parses each file given, as MHBatch does.
 
 class MH_ParserDemo {
 
-    static PARSER MH_Parser = new MH_Parser() ;
+    public static void main (String[] args) throws Exception {
+    MHBatch.main (args) ;
+    }
+}
+
+
+// For testing recovery: parses programs with several errors each, and
+// checks that every error is reported, and where.  Each has a missing ';'
+// before independent errors in later declarations, which must not be
+// taken for its consequences.  The exit status is 1 if any check fails.
+
+class MH_RecoveryCheck {
+
+    static final String[] programs = {
+    "f :: Integer\nf = 1 ;\ng :: Integer ;\ng = 2 ;\nh :: Integer ;\n" +
+    "h = if ;\nk :: Integer ;\nk = 3 ;\nm :: Bool ;\nm = (1 ;\n",
+    "g :: Integer ;\ng = 2 ;\nh :: Integer ;\nh = if ;\nk :: Integer ;\n" +
+    "k = 3 ;\nm :: Bool ;\nm = (1 ;\n",
+    "f :: Integer ;\nf = 1\ng :: Integer ;\ng = 2 ;\nh :: Bool ;\nh = ) ;\n" +
+    "k :: Integer ;\nk = if ;\n",
+    "f :: Integer\nf = 1 ;\ng :: Integer\ng = 2 ;\nh :: Bool ;\nh = 1 + ;\n" +
+    "k :: Integer ;\nk x = x ;\nm :: Integer -> ;\nm = 4 ;\n"
+    } ;
+
+    // where each error in each program starts
+    static final long[][] errors = {
+    {13, 66, 110}, {45, 89}, {23, 60, 86}, {13, 34, 62, 105}
+    } ;
 
     public static void main (String[] args) throws Exception {
-    Reader reader = new BufferedReader (new FileReader (args[0])) ;
-    LEX_TOKEN_STREAM MH_Lexer = 
-        new CheckedSymbolLexer (new MH_Lexer (reader)) ;
-    TREE theTree = MH_Parser.parseTokenStream (MH_Lexer) ;
+    MH_Parser parser = new MH_Parser() ;
+    parser.verbose = false ;
+    Diagnostics problems = new Diagnostics (100) ;
+    int failed = 0 ;
+    for (int i=0; i<programs.length; i++) {
+        problems.clear() ;
+        MH_Lexer lexer = new MH_Lexer (programs[i]) ;
+        lexer.diagnostics = problems ;
+        parser.parseRecovering (new CheckedSymbolLexer (lexer), problems) ;
+        long[] found = new long[problems.size()] ;
+        for (int j=0; j<found.length; j++) found[j] = problems.start[j] ;
+        boolean ok = Arrays.equals (found, errors[i]) ;
+        if (!ok) failed++ ;
+        System.out.println ("Program " + i + (ok ? ": ok" : ": errors at " 
+            + Arrays.toString (found) + ", expected " + Arrays.toString (errors[i]))) ;
+        for (int j=0; j<problems.size(); j++) {
+        System.out.println ("  " + problems.message(j)) ;
+        }
+    }
+    if (failed > 0) System.exit (1) ;
     }
 }
@@ -0,0 +1,374 @@
+
+// File:   MHTokens.java
+// Generated by DFAGen from MHTokens.spec - do not edit.
+
+
+// ""  --+([^!#$%&*+./<=>?@\\^|~:\-\r\n\f][^\r\n\f]*)?
+
+class CommentAcceptor extends Acceptor implements DFA {
+
+    public String lexClass () {return "" ;}
+    public int numberOfStates () {return 5 ;}
+    int next (int state, char c) {return step (state, c) ;}
+    boolean accepting (int state) {return isAccepting (state) ;}
+    int dead () {return 1 ;}
+
+    static int step (int state, char c) {
+        switch (state) {
+        case 0:
+            if (c == '-') return 2 ;
+            return 1 ;
+        case 2:
+            if (c == '-') return 3 ;
+            return 1 ;
+        case 3:
+            if (c == '-') return 3 ;
+            if (c <= 9 || c == 11 || (c >= 14 && c <= ' ') || c == '"' || (c >= 39 && c <= ')') || c == ',' || (c >= '0' && c <= '9') || c == ';' || (c >= 'A' && c <= '[') || c == ']' || (c >= '_' && c <= '{') || c == '}' || c >= 127) return 4 ;
+            return 1 ;
+        case 4:
+            if (c <= 9 || c == 11 || c >= 14) return 4 ;
+            return 1 ;
+        default: return 1 ;
+        }
+    }
+
+    static boolean isAccepting (int state) {return state == 3 || state == 4 ;}
+
+    // The Acceptor machinery, without virtual calls
+    private int state = 0 ;
+    public void reset () {state = 0 ;}
+    public void processChar (char c) {state = step (state, c) ;}
+    public boolean isAccepting () {return isAccepting (state) ;}
+    public boolean isDead () {return state == 1 ;}
+}
+
+
+// ""  [ \t\r\n\f]+
+
+class WhitespaceAcceptor extends Acceptor implements DFA {
+
+    public String lexClass () {return "" ;}
+    public int numberOfStates () {return 3 ;}
+    int next (int state, char c) {return step (state, c) ;}
+    boolean accepting (int state) {return isAccepting (state) ;}
+    int dead () {return 1 ;}
+
+    static int step (int state, char c) {
+        switch (state) {
+        case 0:
+            if ((c >= 9 && c <= 10) || (c >= 12 && c <= 13) || c == ' ') return 2 ;
+            return 1 ;
+        case 2:
+            if ((c >= 9 && c <= 10) || (c >= 12 && c <= 13) || c == ' ') return 2 ;
+            return 1 ;
+        default: return 1 ;
+        }
+    }
+
+    static boolean isAccepting (int state) {return state == 2 ;}
+
+    // The Acceptor machinery, without virtual calls
+    private int state = 0 ;
+    public void reset () {state = 0 ;}
+    public void processChar (char c) {state = step (state, c) ;}
+    public boolean isAccepting () {return isAccepting (state) ;}
+    public boolean isDead () {return state == 1 ;}
+}
+
+
+// "("  \(
+
+class OpenBracAcc extends Acceptor implements DFA {
+
+    public String lexClass () {return "(" ;}
+    public int numberOfStates () {return 3 ;}
+    int next (int state, char c) {return step (state, c) ;}
+    boolean accepting (int state) {return isAccepting (state) ;}
+    int dead () {return 1 ;}
+
+    static int step (int state, char c) {
+        switch (state) {
+        case 0:
+            if (c == '(') return 2 ;
+            return 1 ;
+        case 2:
+            return 1 ;
+        default: return 1 ;
+        }
+    }
+
+    static boolean isAccepting (int state) {return state == 2 ;}
+
+    // The Acceptor machinery, without virtual calls
+    private int state = 0 ;
+    public void reset () {state = 0 ;}
+    public void processChar (char c) {state = step (state, c) ;}
+    public boolean isAccepting () {return isAccepting (state) ;}
+    public boolean isDead () {return state == 1 ;}
+}
+
+
+// ")"  \)
+
+class ClosedBracAcc extends Acceptor implements DFA {
+
+    public String lexClass () {return ")" ;}
+    public int numberOfStates () {return 3 ;}
+    int next (int state, char c) {return step (state, c) ;}
+    boolean accepting (int state) {return isAccepting (state) ;}
+    int dead () {return 1 ;}
+
+    static int step (int state, char c) {
+        switch (state) {
+        case 0:
+            if (c == ')') return 2 ;
+            return 1 ;
+        case 2:
+            return 1 ;
+        default: return 1 ;
+        }
+    }
+
+    static boolean isAccepting (int state) {return state == 2 ;}
+
+    // The Acceptor machinery, without virtual calls
+    private int state = 0 ;
+    public void reset () {state = 0 ;}
+    public void processChar (char c) {state = step (state, c) ;}
+    public boolean isAccepting () {return isAccepting (state) ;}
+    public boolean isDead () {return state == 1 ;}
+}
+
+
+// ";"  ;
+
+class SemicolAcc extends Acceptor implements DFA {
+
+    public String lexClass () {return ";" ;}
+    public int numberOfStates () {return 3 ;}
+    int next (int state, char c) {return step (state, c) ;}
+    boolean accepting (int state) {return isAccepting (state) ;}
+    int dead () {return 1 ;}
+
+    static int step (int state, char c) {
+        switch (state) {
+        case 0:
+            if (c == ';') return 2 ;
+            return 1 ;
+        case 2:
+            return 1 ;
+        default: return 1 ;
+        }
+    }
+
+    static boolean isAccepting (int state) {return state == 2 ;}
+
+    // The Acceptor machinery, without virtual calls
+    private int state = 0 ;
+    public void reset () {state = 0 ;}
+    public void processChar (char c) {state = step (state, c) ;}
+    public boolean isAccepting () {return isAccepting (state) ;}
+    public boolean isDead () {return state == 1 ;}
+}
+
+
+// "KEYWORD"  Integer|Bool|True|False
+
+class CapitalKeywordAcc extends Acceptor implements DFA {
+
+    public String lexClass () {return "KEYWORD" ;}
+    public int numberOfStates () {return 18 ;}
+    int next (int state, char c) {return step (state, c) ;}
+    boolean accepting (int state) {return isAccepting (state) ;}
+    int dead () {return 1 ;}
+
+    static int step (int state, char c) {
+        switch (state) {
+        case 0:
+            if (c == 'B') return 2 ;
+            if (c == 'F') return 3 ;
+            if (c == 'I') return 4 ;
+            if (c == 'T') return 5 ;
+            return 1 ;
+        case 2:
+            if (c == 'o') return 6 ;
+            return 1 ;
+        case 3:
+            if (c == 'a') return 7 ;
+            return 1 ;
+        case 4:
+            if (c == 'n') return 8 ;
+            return 1 ;
+        case 5:
+            if (c == 'r') return 9 ;
+            return 1 ;
+        case 6:
+            if (c == 'o') return 10 ;
+            return 1 ;
+        case 7:
+            if (c == 'l') return 11 ;
+            return 1 ;
+        case 8:
+            if (c == 't') return 12 ;
+            return 1 ;
+        case 9:
+            if (c == 'u') return 13 ;
+            return 1 ;
+        case 10:
+            if (c == 'l') return 14 ;
+            return 1 ;
+        case 11:
+            if (c == 's') return 13 ;
+            return 1 ;
+        case 12:
+            if (c == 'e') return 15 ;
+            return 1 ;
+        case 13:
+            if (c == 'e') return 14 ;
+            return 1 ;
+        case 14:
+            return 1 ;
+        case 15:
+            if (c == 'g') return 16 ;
+            return 1 ;
+        case 16:
+            if (c == 'e') return 17 ;
+            return 1 ;
+        case 17:
+            if (c == 'r') return 14 ;
+            return 1 ;
+        default: return 1 ;
+        }
+    }
+
+    static boolean isAccepting (int state) {return state == 14 ;}
+
+    // The Acceptor machinery, without virtual calls
+    private int state = 0 ;
+    public void reset () {state = 0 ;}
+    public void processChar (char c) {state = step (state, c) ;}
+    public boolean isAccepting () {return isAccepting (state) ;}
+    public boolean isDead () {return state == 1 ;}
+}
+
+
+// "SYM"  [!#$%&*+./<=>?@\\^|~:\-]+
+
+class SymAcceptor extends Acceptor implements DFA {
+
+    public String lexClass () {return "SYM" ;}
+    public int numberOfStates () {return 3 ;}
+    int next (int state, char c) {return step (state, c) ;}
+    boolean accepting (int state) {return isAccepting (state) ;}
+    int dead () {return 1 ;}
+
+    static int step (int state, char c) {
+        switch (state) {
+        case 0:
+            if (c == '!' || (c >= '#' && c <= '&') || (c >= '*' && c <= '+') || (c >= '-' && c <= '/') || c == ':' || (c >= '<' && c <= '@') || c == 92 || c == '^' || c == '|' || c == '~') return 2 ;
+            return 1 ;
+        case 2:
+            if (c == '!' || (c >= '#' && c <= '&') || (c >= '*' && c <= '+') || (c >= '-' && c <= '/') || c == ':' || (c >= '<' && c <= '@') || c == 92 || c == '^' || c == '|' || c == '~') return 2 ;
+            return 1 ;
+        default: return 1 ;
+        }
+    }
+
+    static boolean isAccepting (int state) {return state == 2 ;}
+
+    // The Acceptor machinery, without virtual calls
+    private int state = 0 ;
+    public void reset () {state = 0 ;}
+    public void processChar (char c) {state = step (state, c) ;}
+    public boolean isAccepting () {return isAccepting (state) ;}
+    public boolean isDead () {return state == 1 ;}
+}
+
+
+// "VAR"  [a-z_][A-Za-z0-9']*
+
+class VarAcceptor extends Acceptor implements DFA {
+
+    public String lexClass () {return "VAR" ;}
+    public int numberOfStates () {return 3 ;}
+    int next (int state, char c) {return step (state, c) ;}
+    boolean accepting (int state) {return isAccepting (state) ;}
+    int dead () {return 1 ;}
+
+    static int step (int state, char c) {
+        switch (state) {
+        case 0:
+            if (c == '_' || (c >= 'a' && c <= 'z')) return 2 ;
+            return 1 ;
+        case 2:
+            if (c == 39 || (c >= '0' && c <= '9') || (c >= 'A' && c <= 'Z') || (c >= 'a' && c <= 'z')) return 2 ;
+            return 1 ;
+        default: return 1 ;
+        }
+    }
+
+    static boolean isAccepting (int state) {return state == 2 ;}
+
+    // The Acceptor machinery, without virtual calls
+    private int state = 0 ;
+    public void reset () {state = 0 ;}
+    public void processChar (char c) {state = step (state, c) ;}
+    public boolean isAccepting () {return isAccepting (state) ;}
+    public boolean isDead () {return state == 1 ;}
+}
+
+
+// "NUM"  0|[1-9][0-9]*
+
+class NumAcceptor extends Acceptor implements DFA {
+
+    public String lexClass () {return "NUM" ;}
+    public int numberOfStates () {return 4 ;}
+    int next (int state, char c) {return step (state, c) ;}
+    boolean accepting (int state) {return isAccepting (state) ;}
+    int dead () {return 1 ;}
+
+    static int step (int state, char c) {
+        switch (state) {
+        case 0:
+            if (c == '0') return 2 ;
+            if ((c >= '1' && c <= '9')) return 3 ;
+            return 1 ;
+        case 2:
+            return 1 ;
+        case 3:
+            if ((c >= '0' && c <= '9')) return 3 ;
+            return 1 ;
+        default: return 1 ;
+        }
+    }
+
+    static boolean isAccepting (int state) {return state == 2 || state == 3 ;}
+
+    // The Acceptor machinery, without virtual calls
+    private int state = 0 ;
+    public void reset () {state = 0 ;}
+    public void processChar (char c) {state = step (state, c) ;}
+    public boolean isAccepting () {return isAccepting (state) ;}
+    public boolean isDead () {return state == 1 ;}
+}
+
+
+// All of the above, in order of priority
+
+class MHTokens {
+
+    static DFA[] acceptors () {
+        return new DFA[] {
+            new CommentAcceptor (),
+            new WhitespaceAcceptor (),
+            new OpenBracAcc (),
+            new ClosedBracAcc (),
+            new SemicolAcc (),
+            new CapitalKeywordAcc (),
+            new SymAcceptor (),
+            new VarAcceptor (),
+            new NumAcceptor ()
+        } ;
+    }
+}
@@ -0,0 +1,21 @@
+// Lexical classes of Micro-Haskell, in order of priority.
+// Compile with
+//    java DFAGen MHTokens.spec MHTokens.java
+
+// Comments: two or more dashes, then optionally a character that is
+// neither a symbol nor a newline and the rest of the line.
+CommentAcceptor     ""          --+([^!#$%&*+./<=>?@\\^|~:\-\r\n\f][^\r\n\f]*)?
+WhitespaceAcceptor  ""          [ \t\r\n\f]+
+
+OpenBracAcc         "("         \(
+ClosedBracAcc       ")"         \)
+SemicolAcc          ";"         ;
+
+// Keywords are picked out of the KEYWORD and VAR tokens by MH_Lexer's
+// keyword table, rather than each having an acceptor of its own.  The
+// KEYWORD class consists of just the keywords that start with a capital,
+// and never reaches the parser.
+CapitalKeywordAcc   "KEYWORD"   Integer|Bool|True|False
+SymAcceptor         "SYM"       [!#$%&*+./<=>?@\\^|~:\-]+
+VarAcceptor         "VAR"       [a-z_][A-Za-z0-9']*
+NumAcceptor         "NUM"       0|[1-9][0-9]*
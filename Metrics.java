@@ -0,0 +1,209 @@
+
+// File:   Metrics.java
+// Date:   October 2026
+
+// Counters and Flight Recorder events for the lexer and parser.
+// Counting is switched on by running with -Dmh.metrics=true.  The switch
+// is a static final flag tested at every counting point, so with it off
+// the JIT compiles the counting code away and nothing is paid for it.
+// With it on, each lexer and parser counts into plain fields of its own,
+// and merges them into the shared totals now and then, so threads do not
+// contend on every token.
+
+// The totals are reported by a periodic "mh.Totals" event, and by
+// Metrics.report().  Each token and each top-level unit of a parse
+// (e.g. #Decl) can also be recorded as an event, with its duration, when
+// those events are enabled in the recording.
+
+
+import java.util.* ;
+import jdk.jfr.* ;
+
+class Metrics {
+
+    static final boolean ON = Boolean.getBoolean ("mh.metrics") ;
+
+    // Lexer totals per lexical class: tokens, characters examined,
+    // characters backtracked over, and nanoseconds spent
+    static final Map<String,long[]> lexTotals = new TreeMap<String,long[]>() ;
+    static long maxBacktrack = 0 ;
+
+    // Parser totals
+    static long parses, lookups, nodes, units, unitNanos ;
+    static int maxDepth = 0 ;
+
+    static {
+        if (ON) {
+            FlightRecorder.addPeriodicEvent (TotalsEvent.class, new Runnable () {
+                public void run () {
+                    TotalsEvent e = new TotalsEvent () ;
+                    synchronized (Metrics.class) {
+                        for (long[] t : lexTotals.values()) {
+                            e.tokens += t[0] ; e.chars += t[1] ;
+                            e.backtrack += t[2] ;
+                        }
+                        e.maxBacktrack = maxBacktrack ;
+                        e.lookups = lookups ; e.nodes = nodes ;
+                        e.maxDepth = maxDepth ;
+                    }
+                    e.commit () ;
+                }
+            }) ;
+        }
+    }
+
+    static synchronized String report () {
+        StringBuilder out = new StringBuilder () ;
+        out.append ("class\ttokens\tchars\tbacktrack\tns/token\n") ;
+        for (Map.Entry<String,long[]> e : lexTotals.entrySet()) {
+            long[] t = e.getValue() ;
+            out.append ("\"" + e.getKey() + "\"\t" + t[0] + "\t" + t[1] + "\t" +
+                        t[2] + "\t" + (t[0] == 0 ? 0 : t[3] / t[0]) + "\n") ;
+        }
+        out.append ("max backtrack " + maxBacktrack + "\n") ;
+        out.append ("parses " + parses + ", table lookups " + lookups +
+                    ", nodes " + nodes + ", max stack depth " + maxDepth + "\n") ;
+        out.append ("units " + units + ", ns/unit " +
+                    (units == 0 ? 0 : unitNanos / units) + "\n") ;
+        return out.toString() ;
+    }
+}
+
+
+// Counts kept by one GenLexer, indexed by acceptor.
+
+class LexMetrics {
+
+    static final int FLUSH = 4096 ;   // tokens between merges into Metrics
+
+    String[] classes ;
+    long[] tokens, chars, backtrack, nanos ;
+    long maxBacktrack ;
+    int pending = 0 ;
+
+    LexMetrics (DFA[] acceptors) {
+        int n = acceptors.length ;
+        classes = new String[n] ;
+        for (int i=0; i<n; i++) classes[i] = acceptors[i].lexClass() ;
+        tokens = new long[n] ; chars = new long[n] ;
+        backtrack = new long[n] ; nanos = new long[n] ;
+    }
+
+    void token (int acceptor, long start, long end, long read, long begun) {
+        long time = System.nanoTime() - begun ;
+        tokens[acceptor]++ ;
+        chars[acceptor] += read - start ;
+        backtrack[acceptor] += read - end ;
+        nanos[acceptor] += time ;
+        maxBacktrack = Math.max (maxBacktrack, read - end) ;
+        LexTokenEvent e = new LexTokenEvent () ;
+        if (e.shouldCommit()) {
+            e.lexClass = classes[acceptor] ;
+            e.length = end - start ;
+            e.backtrack = read - end ;
+            e.nanos = time ;
+            e.commit () ;
+        }
+        if (++pending == FLUSH) flush () ;
+    }
+
+    void flush () {
+        synchronized (Metrics.class) {
+            for (int i=0; i<classes.length; i++) {
+                long[] t = Metrics.lexTotals.get (classes[i]) ;
+                if (t == null) {
+                    t = new long[4] ;
+                    Metrics.lexTotals.put (classes[i], t) ;
+                }
+                t[0] += tokens[i] ; t[1] += chars[i] ;
+                t[2] += backtrack[i] ; t[3] += nanos[i] ;
+            }
+            Metrics.maxBacktrack = Math.max (Metrics.maxBacktrack, maxBacktrack) ;
+        }
+        Arrays.fill (tokens, 0) ; Arrays.fill (chars, 0) ;
+        Arrays.fill (backtrack, 0) ; Arrays.fill (nanos, 0) ;
+        pending = 0 ;
+    }
+}
+
+
+// Counts kept during one parse.
+
+class ParseMetrics {
+
+    long lookups, nodes, units, unitNanos ;
+    int maxDepth ;
+
+    // the unit being parsed, if any
+    int unitDepth = -1 ;
+    long unitBegun ;
+    ParseUnitEvent unitEvent ;
+
+    void depth (int d) {if (d > maxDepth) maxDepth = d ;}
+
+    void beginUnit (String symbol, int depth) {
+        unitDepth = depth ;
+        unitBegun = System.nanoTime() ;
+        unitEvent = new ParseUnitEvent () ;
+        unitEvent.nonterminal = symbol ;
+        unitEvent.begin () ;
+    }
+
+    // Called with the current stack depth; ends the unit once the stack
+    // is back down to where it was when the unit was expanded.
+    void checkUnit (int depth) {
+        if (unitDepth >= 0 && depth <= unitDepth) {
+            units++ ;
+            unitNanos += System.nanoTime() - unitBegun ;
+            unitDepth = -1 ;
+            unitEvent.commit () ;
+        }
+    }
+
+    void flush () {
+        synchronized (Metrics.class) {
+            Metrics.parses++ ;
+            Metrics.lookups += lookups ;
+            Metrics.nodes += nodes ;
+            Metrics.units += units ;
+            Metrics.unitNanos += unitNanos ;
+            Metrics.maxDepth = Math.max (Metrics.maxDepth, maxDepth) ;
+        }
+    }
+}
+
+
+@Name("mh.LexToken")
+@Label("Lexical Token")
+@Category({"Micro-Haskell", "Lexer"})
+@StackTrace(false)
+@Enabled(false)
+class LexTokenEvent extends Event {
+    @Label("Lexical Class") String lexClass ;
+    @Label("Length") long length ;
+    @Label("Backtrack") long backtrack ;
+    @Label("Time") @Timespan long nanos ;
+}
+
+@Name("mh.ParseUnit")
+@Label("Parse Unit")
+@Category({"Micro-Haskell", "Parser"})
+@StackTrace(false)
+class ParseUnitEvent extends Event {
+    @Label("Nonterminal") String nonterminal ;
+}
+
+@Name("mh.Totals")
+@Label("Lexer and Parser Totals")
+@Category({"Micro-Haskell"})
+@StackTrace(false)
+@Period("1 s")
+class TotalsEvent extends Event {
+    @Label("Tokens") long tokens ;
+    @Label("Characters Examined") long chars ;
+    @Label("Characters Backtracked") long backtrack ;
+    @Label("Longest Backtrack") long maxBacktrack ;
+    @Label("Table Lookups") long lookups ;
+    @Label("Nodes Allocated") long nodes ;
+    @Label("Maximum Stack Depth") int maxDepth ;
+}
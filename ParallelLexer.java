@@ -0,0 +1,206 @@
+
+// File:   ParallelLexer.java
+// Date:   October 2026
+
+// Lexing a large input in pieces on a ForkJoin pool.
+// In Micro-Haskell the only token that can contain a line break is a run
+// of whitespace, and such a run ends at the first non-whitespace char.
+// So if a line starts with a non-whitespace character, a token boundary
+// falls at the start of that line, and the text from there on lexes the
+// same way whatever came before it.  The input is cut at such points into
+// chunks which are lexed independently, each by its own GenLexer, and
+// the tokens handed out in order.  A lexical error is reported when the
+// stream reaches it, with the same text as GenLexer would report, since
+// the offending token starts at the same place in both cases.
+
+// Only a few chunks are lexed ahead of the consumer at any time, so the
+// whole token sequence is never held in memory at once.  A consumer that
+// stops before the end, say at a parse error, should call close(), so
+// that the chunks queued are not lexed for nothing and the file is closed.
+
+// Usage:
+//    ParallelLexer tokens = new ParallelLexer (file, MH_Lexer.MHmerged) ;
+//    try {
+//        parser.parseTokenStream (new CheckedSymbolLexer (tokens)) ;
+//    } finally {
+//        tokens.close() ;
+//    }
+
+
+import java.io.* ;
+import java.nio.ByteBuffer ;
+import java.nio.channels.FileChannel ;
+import java.nio.file.* ;
+import java.util.* ;
+import java.util.concurrent.* ;
+
+class ParallelLexer implements LEX_TOKEN_STREAM {
+
+    static final int CHUNK = 1 << 22 ;   // rough size of a chunk
+
+    CharSequence text ;                  // the input, either in memory
+    FileChannel channel ;                // or in a file of UTF-8
+    long length ;
+    MergedDFA dfa ;
+    boolean keepSkipped ;                // whether to keep tokens of class ""
+
+    ForkJoinPool pool = ForkJoinPool.commonPool() ;
+    int window = 2 * pool.getParallelism() + 1 ;
+    ArrayDeque<ForkJoinTask<Chunk>> pending = new ArrayDeque<ForkJoinTask<Chunk>>() ;
+    long nextChunk = 0 ;                 // start of the next chunk to submit
+
+    List<LexToken> current = Collections.emptyList() ;
+    int index = 0 ;                      // next token of the current chunk
+    Exception error ;                    // error ending the current chunk
+
+    static class Chunk {
+        List<LexToken> tokens = new ArrayList<LexToken>() ;
+        Exception error ;
+    }
+
+    ParallelLexer (CharSequence text, MergedDFA dfa, boolean keepSkipped) {
+        this.text = text ;
+        this.length = text.length() ;
+        this.dfa = dfa ;
+        this.keepSkipped = keepSkipped ;
+        submitChunks () ;
+    }
+
+    ParallelLexer (Path file, MergedDFA dfa, boolean keepSkipped)
+    throws IOException {
+        this.channel = FileChannel.open (file) ;
+        this.length = channel.size() ;
+        this.dfa = dfa ;
+        this.keepSkipped = keepSkipped ;
+        submitChunks () ;
+    }
+
+    ParallelLexer (CharSequence text, MergedDFA dfa) {this (text, dfa, false) ;}
+
+    ParallelLexer (Path file, MergedDFA dfa) throws IOException {
+        this (file, dfa, false) ;
+    }
+
+    // Finding chunk boundaries: the first position at or after p that
+    // follows a newline and holds a non-whitespace character.
+
+    long split (long p) throws IOException {
+        if (p >= length) return length ;
+        if (text != null) {
+            int q = (int)Math.max (p, 1) ;
+            while (q < length && !(CharTypes.isNewline(text.charAt(q-1)) &&
+                                   !CharTypes.isWhitespace(text.charAt(q)))) {
+                q++ ;
+            }
+            return q ;
+        }
+        ByteBuffer block = ByteBuffer.allocate (8192) ;
+        long q = Math.max (p, 1) - 1 ;     // position of block[0]
+        while (q < length) {
+            block.clear() ;
+            channel.read (block, q) ;
+            block.flip() ;
+            for (int i=1; i<block.limit(); i++) {
+                if (CharTypes.isNewline((char)block.get(i-1)) &&
+                    !CharTypes.isWhitespace((char)block.get(i))) {
+                    return q + i ;
+                }
+            }
+            if (block.limit() <= 1) break ;
+            q += block.limit() - 1 ;
+        }
+        return length ;
+    }
+
+    void submitChunks () {
+        try {
+            while (pending.size() < window && nextChunk < length) {
+                final long from = nextChunk ;
+                final long to = split (Math.min (from + CHUNK, length)) ;
+                pending.add (pool.submit (new Callable<Chunk>() {
+                    public Chunk call () {return lex (from, to) ;}
+                })) ;
+                nextChunk = to ;
+            }
+        } catch (final IOException x) {
+            // reported once the chunks before it have been handed out
+            pending.add (pool.submit (new Callable<Chunk>() {
+                public Chunk call () {
+                    Chunk failed = new Chunk() ;
+                    failed.error = x ;
+                    return failed ;
+                }
+            })) ;
+            nextChunk = length ;
+        }
+    }
+
+    // Runs on a pool thread: lexes one chunk with a lexer of its own.
+
+    Chunk lex (long from, long to) {
+        Chunk chunk = new Chunk() ;
+        try {
+            LexInput input = (text != null)
+                ? new CharSequenceInput (text, (int)from, (int)to)
+                : new MappedInput (channel, from, to) ;
+            GenLexer lexer = new GenLexer (input, dfa) ;
+            LexToken tok = keepSkipped ? lexer.pullToken() : lexer.pullProperToken() ;
+            while (tok != null) {
+                chunk.tokens.add (tok) ;
+                tok = keepSkipped ? lexer.pullToken() : lexer.pullProperToken() ;
+            }
+        } catch (Exception x) {
+            chunk.error = x ;
+        }
+        return chunk ;
+    }
+
+    // Moves on to the next chunk; false at end of input.
+
+    boolean advance () throws IOException {
+        ForkJoinTask<Chunk> task = pending.poll() ;
+        if (task == null) return false ;
+        submitChunks () ;
+        Chunk chunk = task.join() ;
+        current = chunk.tokens ;
+        index = 0 ;
+        error = chunk.error ;
+        if (pending.isEmpty() && channel != null) {
+            channel.close() ;   // mappings already made stay valid
+        }
+        return true ;
+    }
+
+    LexToken next (boolean proper, boolean remove) throws Exception {
+        while (true) {
+            if (index < current.size()) {
+                LexToken tok = current.get(index) ;
+                if (proper && tok.lexClassId() == Symbols.SKIP) {
+                    index++ ;
+                    continue ;
+                }
+                if (remove) index++ ;
+                return tok ;
+            }
+            if (error != null) throw error ;
+            if (!advance()) return null ;
+        }
+    }
+
+    // Stops lexing, if the consumer will take no more tokens: chunks not
+    // yet begun are cancelled (one under way runs to its end), and the
+    // file is closed.  Tokens already handed out stay valid.
+    void close () throws IOException {
+        for (ForkJoinTask<Chunk> task : pending) task.cancel (false) ;
+        pending.clear() ;
+        nextChunk = length ;
+        current = Collections.emptyList() ;
+        error = null ;
+        if (channel != null) channel.close() ;
+    }
+
+    public LexToken pullToken () throws Exception {return next (false, true) ;}
+    public LexToken pullProperToken () throws Exception {return next (true, true) ;}
+    public LexToken peekToken () throws Exception {return next (false, false) ;}
+    public LexToken peekProperToken () throws Exception {return next (true, false) ;}
+}
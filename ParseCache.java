@@ -0,0 +1,543 @@
+// File:   ParseCache.java
+// Date:   October 2026
+
+// A cache of parse results on disk, so that a source file that has not
+// changed since it was last parsed need not be lexed or parsed again.
+// Files in the cache directory are named by the SHA-256 hash of the
+// source's bytes, and each holds the SyntaxArena built from it, its
+// tokens, and the names of the symbols they use, in a flat layout that
+// is memory-mapped and used where it lies (see MappedArena below).  So a
+// hit costs reading and hashing the source and mapping the cached file;
+// nothing is built node by node.
+
+// A cached file also records a fingerprint of the grammar it was parsed
+// with, and is ignored (and replaced) if the grammar has changed since.
+// Files are written under a temporary name and then renamed, so any
+// number of threads or JVMs may share a cache directory.  Input that
+// fails to lex or parse is not cached.
+
+// Usage:
+//    ParseCache cache = new ParseCache (Paths.get("cache"), new MH_Parser(),
+//        new ParseCache.Lexers() {
+//            public LEX_TOKEN_STREAM open (LexInput input) {
+//                return new CheckedSymbolLexer (new MH_Lexer (input)) ;
+//            }
+//        }) ;
+//    SYNTAX_TREE tree = cache.parse (Paths.get("prog.mh")).root() ;
+
+
+import java.io.* ;
+import java.nio.* ;
+import java.nio.channels.FileChannel ;
+import java.nio.charset.StandardCharsets ;
+import java.nio.file.* ;
+import java.security.* ;
+import java.util.* ;
+import java.util.concurrent.atomic.AtomicLong ;
+
+class ParseCache {
+
+    // Makes the lexer for a source file
+    interface Lexers {
+        LEX_TOKEN_STREAM open (LexInput input) throws Exception ;
+    }
+
+    Path dir ;
+    GenParser parser ;
+    Lexers lexers ;
+    long fingerprint ;
+    AtomicLong hits = new AtomicLong(), misses = new AtomicLong() ;
+
+    ParseCache (Path dir, GenParser parser, Lexers lexers) throws IOException {
+        this.dir = dir ;
+        this.parser = parser ;
+        this.lexers = lexers ;
+        this.fingerprint = fingerprint (parser.grammar()) ;
+        Files.createDirectories (dir) ;
+    }
+
+    // The parse of the given file, from the cache if possible.
+    MappedArena parse (Path source) throws Exception {
+        String key = hash (source) ;
+        Path cached = dir.resolve (key + ".mhp") ;
+        if (Files.exists (cached)) {
+            MappedArena arena = MappedArena.map (cached, fingerprint, parser.table()) ;
+            if (arena != null) {
+                hits.incrementAndGet() ;
+                return arena ;
+            }
+        }
+        misses.incrementAndGet() ;
+        MappedInput input = new MappedInput (source.toString()) ;
+        PositionStream tokens = new PositionStream (lexers.open (input)) ;
+        SyntaxArena arena = parser.parseToArena (tokens) ;
+        Path temp = Files.createTempFile (dir, key, ".tmp") ;
+        try {
+            MappedArena.write (arena, tokens, fingerprint, temp) ;
+            Files.move (temp, cached, StandardCopyOption.REPLACE_EXISTING,
+                        StandardCopyOption.ATOMIC_MOVE) ;
+        } finally {
+            Files.deleteIfExists (temp) ;
+        }
+        return MappedArena.map (cached, fingerprint, parser.table()) ;
+    }
+
+    static String hash (Path source) throws IOException {
+        MessageDigest digest ;
+        try {
+            digest = MessageDigest.getInstance ("SHA-256") ;
+        } catch (NoSuchAlgorithmException x) {
+            throw new IOException (x) ;
+        }
+        try (FileChannel channel = FileChannel.open (source)) {
+            long size = channel.size() ;
+            for (long from = 0; from < size; from += Integer.MAX_VALUE) {
+                digest.update (channel.map (FileChannel.MapMode.READ_ONLY, from,
+                                            Math.min (size - from, Integer.MAX_VALUE))) ;
+            }
+        }
+        StringBuilder hex = new StringBuilder() ;
+        for (byte b : digest.digest()) hex.append (String.format ("%02x", b)) ;
+        return hex.toString() ;
+    }
+
+    // A hash of the productions of a grammar, in order
+    static long fingerprint (Grammar grammar) {
+        long h = MappedArena.VERSION ;
+        if (grammar == null) return h ;
+        for (String nonterm : grammar.nonterminals()) {
+            h = h * 31 + nonterm.hashCode() ;
+            for (String[] rhs : grammar.alternatives (nonterm)) {
+                h = h * 31 + Arrays.hashCode (rhs) ;
+            }
+        }
+        return h ;
+    }
+
+    // Records the positions in the input of the proper tokens pulled
+    // through it, which are the tokens of the tree, in the same order.
+    static class PositionStream implements LEX_TOKEN_STREAM {
+        LEX_TOKEN_STREAM stream ;
+        int[] start = new int[256], end = new int[256] ;
+        int tokens = 0 ;
+        PositionStream (LEX_TOKEN_STREAM stream) {this.stream = stream ;}
+        LexToken record (LexToken tok) {
+            if (tok == null || tok.lexClassId() == Symbols.SKIP) return tok ;
+            if (tokens == start.length) {
+                start = Arrays.copyOf (start, 2 * tokens) ;
+                end = Arrays.copyOf (end, 2 * tokens) ;
+            }
+            start[tokens] = (int)tok.start() ;
+            end[tokens] = (int)tok.end() ;
+            tokens++ ;
+            return tok ;
+        }
+        public LexToken pullToken () throws Exception {return record (stream.pullToken()) ;}
+        public LexToken pullProperToken () throws Exception {return record (stream.pullProperToken()) ;}
+        public LexToken peekToken () throws Exception {return stream.peekToken() ;}
+        public LexToken peekProperToken () throws Exception {return stream.peekProperToken() ;}
+    }
+}
+
+
+// A SyntaxArena in a file, read in place.  The file has a header giving
+// the counts, the offset of each section and the width of the numbers in
+// each fixed-width one, then the sections:
+//    symbols       the name of each symbol used, by local number
+//    productions   for each, its lhs and the local numbers of its rhs
+//    kind, first   the arena's two ints per node, with symbol ids and
+//                  production numbers replaced by local ones
+//    last          the arena's bit set of last siblings
+//    class         the local symbol of each token
+//    textStart     where each token's text begins, in bytes, and where
+//                  the text ends, tokens + 1 numbers
+//    text          the text of all the tokens, in UTF-8
+//    positions     for each token, the gap since the end of the one
+//                  before and its length in the source, each in seven
+//                  bit groups, low first, the top bit set on all but the
+//                  last
+// The numbers in kind, first, class and textStart each take as few bytes
+// as the largest of their section needs, from 1 to 4, and all are
+// big-endian.  So a node takes 3 or 4 bytes, and a token a byte or two
+// on top of its text.  Only the symbols and productions, a few dozen
+// entries, are read when the file is opened; the rest is read from the
+// mapped buffer as it is visited, and the positions only when the tokens
+// are read again in order.  A different VERSION means a different layout.
+// A file whose sections do not lie in order within it, such as one cut
+// short, is treated as not there.
+
+class MappedArena {
+
+    static final int MAGIC = 0x4D485041 ;     // "MHPA"
+    static final int VERSION = 2 ;
+    static final int HEADER = 84 ;
+
+    ByteBuffer buf ;
+    int nodes, tokens, textBytes ;
+    int kindAt, firstAt, lastAt, classAt, textStartAt, textAt, positionsAt ;
+    int kindWidth, firstWidth, classWidth, textStartWidth ;
+    int[] symbols ;            // symbol ids by local number
+    int[] lhs ;                // symbol ids of the productions' lhs
+    String[][] rhss ;
+
+    // Opens a cached file; null if it was written for another version or
+    // grammar, or is damaged.  If a table is given, right hand sides are
+    // its own arrays.
+    static MappedArena map (Path file, long fingerprint, LL1Table table) throws IOException {
+        ByteBuffer buf ;
+        try (FileChannel channel = FileChannel.open (file)) {
+            buf = channel.map (FileChannel.MapMode.READ_ONLY, 0, channel.size()) ;
+        }
+        if (buf.limit() < HEADER || buf.getInt(0) != MAGIC || buf.getInt(4) != VERSION
+            || buf.getLong(8) != fingerprint) {
+            return null ;
+        }
+        MappedArena a = new MappedArena() ;
+        a.buf = buf ;
+        int symbolCount = buf.getInt(16), productionCount = buf.getInt(20) ;
+        a.nodes = buf.getInt(24) ;
+        a.tokens = buf.getInt(28) ;
+        a.textBytes = buf.getInt(32) ;
+        int symbolsAt = buf.getInt(36), productionsAt = buf.getInt(40) ;
+        a.kindAt = buf.getInt(44) ;
+        a.firstAt = buf.getInt(48) ;
+        a.lastAt = buf.getInt(52) ;
+        a.classAt = buf.getInt(56) ;
+        a.textStartAt = buf.getInt(60) ;
+        a.textAt = buf.getInt(64) ;
+        a.positionsAt = buf.getInt(68) ;
+        a.kindWidth = buf.get(72) ;
+        a.firstWidth = buf.get(73) ;
+        a.classWidth = buf.get(74) ;
+        a.textStartWidth = buf.get(75) ;
+        long nodes = a.nodes, tokens = a.tokens ;
+        if (symbolCount < 0 || productionCount < 0 || nodes < 0 || tokens < 0
+            || a.textBytes < 0
+            || !width (a.kindWidth) || !width (a.firstWidth)
+            || !width (a.classWidth) || !width (a.textStartWidth)
+            || !fits (buf, new int[] {symbolsAt, productionsAt, a.kindAt,
+                                      a.firstAt, a.lastAt, a.classAt,
+                                      a.textStartAt, a.textAt, a.positionsAt},
+                      new long[] {0, 0, a.kindWidth * nodes, a.firstWidth * nodes,
+                                  8*((nodes + 63) >>> 6), a.classWidth * tokens,
+                                  a.textStartWidth * (tokens + 1), a.textBytes,
+                                  2 * tokens})) {
+            return null ;
+        }
+        DataInputStream in = new DataInputStream (new ByteArrayInputStream
+            (bytes (buf, symbolsAt, a.kindAt))) ;
+        // each symbol takes at least 2 bytes, and each production 8
+        if (symbolCount > in.available() / 2 || productionCount > in.available() / 8) {
+            return null ;
+        }
+        try {
+            a.symbols = new int[symbolCount] ;
+            for (int i=0; i<symbolCount; i++) a.symbols[i] = Symbols.id (in.readUTF()) ;
+            a.lhs = new int[productionCount] ;
+            a.rhss = new String[productionCount][] ;
+            for (int p=0; p<productionCount; p++) {
+                a.lhs[p] = a.symbols[in.readInt()] ;
+                int n = in.readInt() ;
+                if (n < 0 || n > in.available() / 4) return null ;
+                String[] rhs = new String[n] ;
+                for (int i=0; i<rhs.length; i++) rhs[i] = Symbols.name (a.symbols[in.readInt()]) ;
+                a.rhss[p] = (table == null) ? rhs : a.same (table, a.lhs[p], rhs) ;
+            }
+        } catch (IOException | RuntimeException x) {
+            // cut short, or a local number out of range
+            return null ;
+        }
+        return a ;
+    }
+
+    static boolean width (int w) {return w >= 1 && w <= 4 ;}
+
+    // Whether sections starting at the given offsets, in order, each at
+    // least the given size, lie one after another between the header and
+    // the end of the file.
+    static boolean fits (ByteBuffer buf, int[] at, long[] size) {
+        long end = HEADER ;
+        for (int i=0; i<at.length; i++) {
+            if (at[i] < end) return false ;
+            end = at[i] + size[i] ;
+        }
+        return end <= buf.limit() ;
+    }
+
+    static byte[] bytes (ByteBuffer buf, int from, int to) {
+        byte[] b = new byte[to - from] ;
+        for (int i=0; i<b.length; i++) b[i] = buf.get (from + i) ;
+        return b ;
+    }
+
+    String[] same (LL1Table table, int nonterm, String[] rhs) {
+        for (int p=0; p<table.rhs.length; p++) {
+            if (table.lhs[p] == nonterm && Arrays.equals (table.rhs[p], rhs)) {
+                return table.rhs[p] ;
+            }
+        }
+        return rhs ;
+    }
+
+    static void write (SyntaxArena arena, ParseCache.PositionStream positions,
+                       long fingerprint, Path file) throws IOException {
+        // number the symbols and productions used
+        Map<Integer,Integer> local = new LinkedHashMap<Integer,Integer>() ;
+        for (int p=0; p<arena.rhss.size(); p++) {
+            number (local, arena.lhs[p]) ;
+            for (String s : arena.rhss.get(p)) number (local, Symbols.id (s)) ;
+        }
+        for (int n=0; n<arena.count; n++) {
+            if (arena.kind[n] >= 0) number (local, arena.kind[n]) ;
+        }
+        int[] kind = new int[arena.count] ;
+        int[] tokenClass = new int[arena.tokens] ;
+        for (int n=0; n<arena.count; n++) {
+            int k = arena.kind[n] ;
+            kind[n] = (k >= 0) ? local.get(k) : k ;
+            if (k >= 0 && arena.first[n] >= 0) tokenClass[arena.first[n]] = kind[n] ;
+        }
+        ByteArrayOutputStream text = new ByteArrayOutputStream() ;
+        int[] textStart = new int[arena.tokens + 1] ;
+        for (int k=0; k<arena.tokens; k++) {
+            textStart[k] = text.size() ;
+            int from = arena.tokenStart[k] ;
+            byte[] b = new String (arena.text, from, arena.tokenStart[k+1] - from)
+                .getBytes (StandardCharsets.UTF_8) ;
+            text.write (b, 0, b.length) ;
+        }
+        textStart[arena.tokens] = text.size() ;
+        int kindWidth = width (kind, arena.count) ;
+        int firstWidth = width (arena.first, arena.count) ;
+        int classWidth = width (tokenClass, arena.tokens) ;
+        int textStartWidth = width (textStart, arena.tokens + 1) ;
+
+        ByteArrayOutputStream body = new ByteArrayOutputStream() ;
+        DataOutputStream out = new DataOutputStream (body) ;
+        int[] at = new int[9] ;
+        at[0] = HEADER + out.size() ;
+        for (int id : local.keySet()) out.writeUTF (Symbols.name (id)) ;
+        at[1] = HEADER + out.size() ;
+        for (int p=0; p<arena.rhss.size(); p++) {
+            String[] rhs = arena.rhss.get(p) ;
+            out.writeInt (local.get (arena.lhs[p])) ;
+            out.writeInt (rhs.length) ;
+            for (String s : rhs) out.writeInt (local.get (Symbols.id (s))) ;
+        }
+        at[2] = HEADER + out.size() ;
+        for (int n=0; n<arena.count; n++) put (out, kind[n], kindWidth) ;
+        at[3] = HEADER + out.size() ;
+        for (int n=0; n<arena.count; n++) put (out, arena.first[n], firstWidth) ;
+        at[4] = HEADER + out.size() ;
+        for (int i=0; i<(arena.count + 63) >>> 6; i++) out.writeLong (arena.last[i]) ;
+        at[5] = HEADER + out.size() ;
+        for (int k=0; k<arena.tokens; k++) put (out, tokenClass[k], classWidth) ;
+        at[6] = HEADER + out.size() ;
+        for (int k=0; k<=arena.tokens; k++) put (out, textStart[k], textStartWidth) ;
+        at[7] = HEADER + out.size() ;
+        text.writeTo (out) ;
+        at[8] = HEADER + out.size() ;
+        int end = 0 ;
+        for (int k=0; k<arena.tokens; k++) {
+            varint (out, positions.start[k] - end) ;
+            varint (out, positions.end[k] - positions.start[k]) ;
+            end = positions.end[k] ;
+        }
+        out.flush() ;
+
+        ByteArrayOutputStream head = new ByteArrayOutputStream (HEADER) ;
+        DataOutputStream h = new DataOutputStream (head) ;
+        h.writeInt (MAGIC) ;
+        h.writeInt (VERSION) ;
+        h.writeLong (fingerprint) ;
+        h.writeInt (local.size()) ;
+        h.writeInt (arena.rhss.size()) ;
+        h.writeInt (arena.count) ;
+        h.writeInt (arena.tokens) ;
+        h.writeInt (text.size()) ;
+        for (int a : at) h.writeInt (a) ;
+        h.writeByte (kindWidth) ;
+        h.writeByte (firstWidth) ;
+        h.writeByte (classWidth) ;
+        h.writeByte (textStartWidth) ;
+        h.writeInt (0) ;                    // reserved
+        h.writeInt (0) ;
+        h.flush() ;
+        try (OutputStream f = Files.newOutputStream (file)) {
+            head.writeTo (f) ;
+            body.writeTo (f) ;
+        }
+    }
+
+    static void number (Map<Integer,Integer> local, int id) {
+        if (!local.containsKey (id)) local.put (id, local.size()) ;
+    }
+
+    // The fewest bytes that hold each of the first count values, signed
+    static int width (int[] values, int count) {
+        int min = 0, max = 0 ;
+        for (int i=0; i<count; i++) {
+            min = Math.min (min, values[i]) ;
+            max = Math.max (max, values[i]) ;
+        }
+        for (int w=1; w<4; w++) {
+            int limit = 1 << (8*w - 1) ;
+            if (min >= -limit && max < limit) return w ;
+        }
+        return 4 ;
+    }
+
+    static void put (DataOutputStream out, int v, int width) throws IOException {
+        for (int i=width-1; i>=0; i--) out.writeByte (v >> (8*i)) ;
+    }
+
+    static void varint (DataOutputStream out, int v) throws IOException {
+        while ((v & ~0x7F) != 0) {
+            out.writeByte ((v & 0x7F) | 0x80) ;
+            v >>>= 7 ;
+        }
+        out.writeByte (v) ;
+    }
+
+    // The number of the given width at the given offset, signed
+    int get (int at, int width) {
+        switch (width) {
+        case 1: return buf.get (at) ;
+        case 2: return buf.getShort (at) ;
+        case 3: return (buf.getShort (at) << 8) | (buf.get (at + 2) & 0xFF) ;
+        default: return buf.getInt (at) ;
+        }
+    }
+
+    int size () {return nodes ;}
+
+    MappedNode root () {return new MappedNode (this, 0) ;}
+
+    MappedNode node (int n) {return new MappedNode (this, n) ;}
+
+    int kind (int n) {return get (kindAt + kindWidth*n, kindWidth) ;}
+
+    int first (int n) {return get (firstAt + firstWidth*n, firstWidth) ;}
+
+    int symbol (int n) {
+        int k = kind(n) ;
+        return (k >= 0) ? symbols[k] : lhs[-k-1] ;
+    }
+
+    String[] rhs (int n) {
+        int k = kind(n) ;
+        return (k >= 0) ? null : rhss[-k-1] ;
+    }
+
+    boolean isExpanded (int n) {return kind(n) < 0 ;}
+
+    int firstChild (int n) {return (kind(n) < 0) ? first(n) : -1 ;}
+
+    int nextSibling (int n) {
+        long bits = buf.getLong (lastAt + 8*(n >>> 6)) ;
+        return ((bits & (1L << n)) != 0) ? -1 : n + 1 ;
+    }
+
+    // The number of a terminal's token, or -1
+    int token (int n) {return (kind(n) < 0) ? -1 : first(n) ;}
+
+    int textStart (int k) {return get (textStartAt + textStartWidth*k, textStartWidth) ;}
+
+    // The chars of token k, as a view of the mapped file
+    CharSequence chars (int k) {
+        return new Utf8Text (buf, textAt + textStart(k), textAt + textStart(k+1)) ;
+    }
+
+    String value (int n) {
+        int k = token(n) ;
+        return (k < 0) ? null : chars(k).toString() ;
+    }
+
+    int childCount (int n) {
+        int k = 0 ;
+        for (int c = firstChild(n); c >= 0; c = nextSibling(c)) k++ ;
+        return k ;
+    }
+
+    // The tokens again, as they came from the lexer, without the discarded
+    // ones, which were not kept
+    LEX_TOKEN_STREAM tokens () {
+        return new LEX_TOKEN_STREAM() {
+            int next = 0 ;
+            int at = positionsAt ;       // the next token's position
+            long end = 0 ;               // where the last one ended
+            LexToken peeked ;
+            int varint () {
+                int v = 0 ;
+                for (int shift = 0; ; shift += 7) {
+                    int b = buf.get (at++) ;
+                    v |= (b & 0x7F) << shift ;
+                    if (b >= 0) return v ;
+                }
+            }
+            public LexToken peekToken () {
+                if (peeked == null && next < tokens) {
+                    long start = end + varint() ;
+                    end = start + varint() ;
+                    peeked = new LexToken (chars (next),
+                        symbols[get (classAt + classWidth*next, classWidth)], start, end) ;
+                }
+                return peeked ;
+            }
+            public LexToken pullToken () {
+                LexToken tok = peekToken() ;
+                if (tok != null) {
+                    next++ ;
+                    peeked = null ;
+                }
+                return tok ;
+            }
+            public LexToken peekProperToken () {return peekToken() ;}
+            public LexToken pullProperToken () {return pullToken() ;}
+        } ;
+    }
+}
+
+
+// A view of one node of a MappedArena as a SYNTAX_TREE.
+
+class MappedNode implements SYNTAX_TREE {
+
+    final MappedArena arena ;
+    final int node ;
+
+    MappedNode (MappedArena arena, int node) {
+        this.arena = arena ; this.node = node ;
+    }
+
+    public String getLabel () {return Symbols.name (getSymbol()) ;}
+    public boolean isTerminal () {return Symbols.isTerminal (getSymbol()) ;}
+    int getSymbol () {return arena.symbol (node) ;}
+    public String getValue () {return arena.value (node) ;}
+    public String[] getRhs () {return arena.rhs (node) ;}
+
+    public MappedNode[] getChildren () {
+        if (!arena.isExpanded (node)) return null ;
+        MappedNode[] children = new MappedNode[arena.childCount (node)] ;
+        int i = 0 ;
+        for (int c = arena.firstChild(node); c >= 0; c = arena.nextSibling(c)) {
+            children[i++] = new MappedNode (arena, c) ;
+        }
+        return children ;
+    }
+
+    MappedNode firstChild () {
+        int c = arena.firstChild (node) ;
+        return (c < 0) ? null : new MappedNode (arena, c) ;
+    }
+    MappedNode nextSibling () {
+        int s = arena.nextSibling (node) ;
+        return (s < 0) ? null : new MappedNode (arena, s) ;
+    }
+
+    public boolean equals (Object o) {
+        return (o instanceof MappedNode) && ((MappedNode)o).arena == arena
+            && ((MappedNode)o).node == node ;
+    }
+    public int hashCode () {return System.identityHashCode (arena) * 31 + node ;}
+}
@@ -0,0 +1,176 @@
+// File:   PipelinedLexer.java
+// Date:   October 2026
+
+// Lexing on a thread of its own, ahead of the parser.
+// A producer thread pulls the proper tokens from a lexer, so tokens of
+// class "" are dropped where they are scanned, and puts them in a ring
+// buffer, from which the parser takes them through the LEX_TOKEN_STREAM
+// methods as usual.  So on two cores, lexing and parsing go on at once.
+
+// The ring has one writer and one reader and needs no locks.  Each side
+// owns one counter: head, the number of tokens the lexer has put in, and
+// tail, the number the parser has taken out.  Both are volatile, but each
+// side publishes its counter only once per BATCH tokens, or when it has
+// to wait for the other, and otherwise works from its own copy of the
+// other's counter, refreshed only when it runs out.  Writing a token's
+// slot happens before the volatile write of head that publishes it, so
+// the parser sees the token complete.  A side that has to wait spins
+// briefly, then yields, then sleeps a little at a time.
+
+// If the lexer fails, the exception is kept and thrown to the parser once
+// it has taken every token before the point of failure, just as a lexer
+// on the parser's thread would throw it there.  So is an Error, such as
+// running out of memory; anything else thrown is wrapped in an Exception.
+// A parser that gives up early should call close(), so that the lexer
+// thread stops.
+
+// The lexer runs on a thread of its own, or on one from a given Executor,
+// so that a program pipelining many files can reuse its threads.  The
+// Executor must have a thread free for each lexer at once, or a parser
+// may wait for a lexer that has not begun.
+
+// Tokens are published a batch at a time, so the parser waits for a
+// whole batch (or the end of input), which suits files rather than
+// interactive input.
+
+// Usage:
+//    PipelinedLexer tokens = new PipelinedLexer
+//        (new CheckedSymbolLexer (new MH_Lexer (new MappedInput (file)))) ;
+//    try {
+//        parser.parseTokenStream (tokens) ;
+//    } finally {
+//        tokens.close() ;
+//    }
+
+
+import java.util.concurrent.Executor ;
+import java.util.concurrent.locks.LockSupport ;
+
+class PipelinedLexer implements LEX_TOKEN_STREAM {
+
+    static final int BATCH = 64 ;
+
+    final LexToken[] ring ;
+    final int mask ;
+
+    volatile long head = 0 ;          // tokens put in by the lexer thread
+    volatile long tail = 0 ;          // tokens taken out by the parser
+    volatile boolean done = false ;   // the lexer thread has finished
+    volatile boolean closed = false ; // the parser has finished
+    Throwable error ;                 // what stopped the lexer, set before done
+
+    // The parser's side
+    long next = 0 ;                   // tokens taken out
+    long available = 0 ;              // head, when last read
+
+    // The lexer thread's side
+    long written = 0 ;                // tokens put in
+    long room = 0 ;                   // tail + ring size, when last read
+
+    PipelinedLexer (LEX_TOKEN_STREAM lexer) {this (lexer, 4096, null) ;}
+
+    PipelinedLexer (LEX_TOKEN_STREAM lexer, int capacity) {
+        this (lexer, capacity, null) ;
+    }
+
+    PipelinedLexer (LEX_TOKEN_STREAM lexer, Executor executor) {
+        this (lexer, 4096, executor) ;
+    }
+
+    // capacity is rounded up to a power of two, at least 2 * BATCH; with
+    // no executor, the lexer gets a daemon thread of its own
+    PipelinedLexer (final LEX_TOKEN_STREAM lexer, int capacity, Executor executor) {
+        int size = 2 * BATCH ;
+        while (size < capacity) size *= 2 ;
+        ring = new LexToken[size] ;
+        mask = size - 1 ;
+        room = size ;
+        Runnable producer = new Runnable() {
+            public void run () {produce (lexer) ;}
+        } ;
+        if (executor != null) {
+            executor.execute (producer) ;
+            return ;
+        }
+        Thread thread = new Thread (producer, "PipelinedLexer") ;
+        thread.setDaemon (true) ;
+        thread.start() ;
+    }
+
+    // Runs on the lexer thread
+    void produce (LEX_TOKEN_STREAM lexer) {
+        try {
+            for (LexToken tok = lexer.pullProperToken(); tok != null;
+                 tok = lexer.pullProperToken()) {
+                if (written == room) {
+                    head = written ;
+                    for (int spins = 0; written == tail + ring.length; spins++) {
+                        if (closed) return ;
+                        pause (spins) ;
+                    }
+                    room = tail + ring.length ;
+                }
+                ring[(int)written & mask] = tok ;
+                written++ ;
+                if ((written & (BATCH-1)) == 0) {
+                    head = written ;
+                    if (closed) return ;
+                }
+            }
+        } catch (Throwable x) {
+            error = x ;
+        } finally {
+            head = written ;
+            done = true ;
+        }
+    }
+
+    static void pause (int spins) {
+        if (spins < 64) Thread.onSpinWait() ;
+        else if (spins < 128) Thread.yield() ;
+        else LockSupport.parkNanos (50000) ;
+    }
+
+    // The parser's side: the next token, or null at end of input
+    public LexToken peekProperToken () throws Exception {
+        if (next == available) {
+            tail = next ;
+            for (int spins = 0; (available = head) == next; spins++) {
+                if (done) {
+                    available = head ;
+                    if (available > next) break ;
+                    if (error != null) throw failure (error) ;
+                    return null ;
+                }
+                pause (spins) ;
+            }
+        }
+        return ring[(int)next & mask] ;
+    }
+
+    // What the lexer threw, as the parser throws it
+    static Exception failure (Throwable x) {
+        if (x instanceof Exception) return (Exception)x ;
+        if (x instanceof Error) throw (Error)x ;
+        return new Exception (x) ;
+    }
+
+    public LexToken pullProperToken () throws Exception {
+        LexToken tok = peekProperToken() ;
+        if (tok != null) {
+            ring[(int)next & mask] = null ;
+            next++ ;
+            if ((next & (BATCH-1)) == 0) tail = next ;
+        }
+        return tok ;
+    }
+
+    // Only proper tokens are passed on
+    public LexToken peekToken () throws Exception {return peekProperToken() ;}
+    public LexToken pullToken () throws Exception {return pullProperToken() ;}
+
+    // Stops the lexer thread, if the parser will take no more tokens.
+    void close () {
+        closed = true ;
+    }
+}
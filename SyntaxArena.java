@@ -0,0 +1,206 @@
+// File:   SyntaxArena.java
+// Date:   October 2026
+
+// A compact form of syntax tree, built by GenParser.parseToArena.
+// The nodes of one parse are numbered in the order they are made, and
+// held in a few parallel arrays rather than as objects.  The children of
+// a node are made together when it is expanded, so they are numbered
+// consecutively: a node's next sibling is the next node, unless it is
+// marked as the last of its siblings.  Each node has two ints:
+//    kind    the symbol id of a terminal or unexpanded nonterminal, or
+//            -(p+1) for a nonterminal expanded by production p, which
+//            records both its symbol and its right hand side
+//    first   the first child of a nonterminal (-1 if none), or the
+//            number of a terminal's token (-1 if it has no value)
+// The text of token k is text[tokenStart[k]] up to text[tokenStart[k+1]],
+// all the tokens of the tree sharing one char array.
+
+// The tree is seen through ArenaNode cursors, which are made only when
+// asked for.  They implement SYNTAX_TREE, so code that reads an STree
+// through that interface reads an arena unchanged; the arena cannot be
+// changed through them.
+
+
+import java.util.* ;
+
+class SyntaxArena {
+
+    int[] kind, first ;
+    long[] last ;                      // bit set of last-born siblings
+    int count = 0 ;
+
+    int[] tokenStart ;                 // tokenStart[tokens] is textLength
+    int tokens = 0 ;
+    char[] text ;
+    int textLength = 0 ;
+
+    // The productions used, numbered in the order of first use.  The same
+    // right hand side, such as epsilon, may belong to several of them.
+    List<String[]> rhss = new ArrayList<String[]>() ;
+    int[] lhs = new int[16] ;
+    private Map<String[],int[]> productions = new IdentityHashMap<String[],int[]>() ;
+
+    SyntaxArena () {this (64, 64, 256) ;}
+
+    // An arena with room for the given numbers of nodes, tokens and chars.
+    SyntaxArena (int nodes, int tokens, int chars) {
+        kind = new int[nodes] ;
+        first = new int[nodes] ;
+        last = new long[(nodes + 63) >>> 6] ;
+        tokenStart = new int[tokens + 2] ;
+        text = new char[chars] ;
+    }
+
+    int size () {return count ;}
+
+    ArenaNode root () {return new ArenaNode (this, 0) ;}
+
+    ArenaNode node (int n) {return new ArenaNode (this, n) ;}
+
+    int symbol (int n) {
+        int k = kind[n] ;
+        return (k >= 0) ? k : lhs[-k-1] ;
+    }
+
+    String[] rhs (int n) {
+        int k = kind[n] ;
+        return (k >= 0) ? null : rhss.get(-k-1) ;
+    }
+
+    boolean isExpanded (int n) {return kind[n] < 0 ;}
+
+    int firstChild (int n) {return (kind[n] < 0) ? first[n] : -1 ;}
+
+    int nextSibling (int n) {
+        return ((last[n >>> 6] & (1L << n)) != 0) ? -1 : n + 1 ;
+    }
+
+    String value (int n) {
+        int k = first[n] ;
+        if (kind[n] < 0 || k < 0) return null ;
+        return new String (text, tokenStart[k], tokenStart[k+1] - tokenStart[k]) ;
+    }
+
+    // Appends an unexpanded node for the given symbol, with no siblings.
+    int add (int sym) {
+        if (count == kind.length) grow (count + 1) ;
+        int n = count++ ;
+        kind[n] = sym ;
+        first[n] = -1 ;
+        last[n >>> 6] |= 1L << n ;
+        return n ;
+    }
+
+    // Records that node n was expanded by rhs, whose symbols have the
+    // given ids, and appends its children; returns the first of them.
+    int expand (int n, String[] rhs, int[] ids) {
+        int p = production (kind[n], rhs) ;
+        int c = count ;
+        if (count + ids.length > kind.length) grow (count + ids.length) ;
+        for (int i=0; i<ids.length; i++) add (ids[i]) ;
+        for (int i=c; i<count-1; i++) last[i >>> 6] &= ~(1L << i) ;
+        kind[n] = -p-1 ;
+        first[n] = (ids.length == 0) ? -1 : c ;
+        return c ;
+    }
+
+    int production (int sym, String[] rhs) {
+        int[] ps = productions.get(rhs) ;
+        if (ps != null) {
+            for (int p : ps) if (lhs[p] == sym) return p ;
+        }
+        int p = rhss.size() ;
+        rhss.add (rhs) ;
+        if (p == lhs.length) lhs = Arrays.copyOf (lhs, 2 * p) ;
+        lhs[p] = sym ;
+        ps = (ps == null) ? new int[1] : Arrays.copyOf (ps, ps.length + 1) ;
+        ps[ps.length - 1] = p ;
+        productions.put (rhs, ps) ;
+        return p ;
+    }
+
+    void setText (int n, CharSequence chars) {
+        int len = chars.length() ;
+        if (textLength + len > text.length) {
+            text = Arrays.copyOf (text, Math.max (textLength + len, 2 * text.length)) ;
+        }
+        for (int i=0; i<len; i++) text[textLength + i] = chars.charAt(i) ;
+        if (tokens + 2 > tokenStart.length) {
+            tokenStart = Arrays.copyOf (tokenStart, 2 * tokenStart.length) ;
+        }
+        tokenStart[tokens] = textLength ;
+        textLength += len ;
+        tokenStart[tokens+1] = textLength ;
+        first[n] = tokens++ ;
+    }
+
+    int childCount (int n) {
+        int k = 0 ;
+        for (int c = firstChild(n); c >= 0; c = nextSibling(c)) k++ ;
+        return k ;
+    }
+
+    void grow (int size) {
+        int m = Math.max (size, 2 * kind.length) ;
+        kind = Arrays.copyOf (kind, m) ;
+        first = Arrays.copyOf (first, m) ;
+        last = Arrays.copyOf (last, (m + 63) >>> 6) ;
+    }
+
+    // Gives back the spare room once the tree is complete.
+    void trim () {
+        productions = null ;
+        if (count == kind.length && tokens + 1 == tokenStart.length
+            && textLength == text.length) return ;
+        kind = Arrays.copyOf (kind, count) ;
+        first = Arrays.copyOf (first, count) ;
+        last = Arrays.copyOf (last, (count + 63) >>> 6) ;
+        tokenStart = Arrays.copyOf (tokenStart, tokens + 1) ;
+        text = Arrays.copyOf (text, textLength) ;
+    }
+}
+
+
+// A view of one node of a SyntaxArena as a SYNTAX_TREE.
+
+class ArenaNode implements SYNTAX_TREE {
+
+    final SyntaxArena arena ;
+    final int node ;
+
+    ArenaNode (SyntaxArena arena, int node) {
+        this.arena = arena ; this.node = node ;
+    }
+
+    public String getLabel () {return Symbols.name (getSymbol()) ;}
+    public boolean isTerminal () {return Symbols.isTerminal (getSymbol()) ;}
+    int getSymbol () {return arena.symbol (node) ;}
+    public String getValue () {return arena.value (node) ;}
+    public String[] getRhs () {return arena.rhs (node) ;}
+
+    public ArenaNode[] getChildren () {
+        if (!arena.isExpanded (node)) return null ;
+        ArenaNode[] children = new ArenaNode[arena.childCount (node)] ;
+        int i = 0 ;
+        for (int c = arena.firstChild(node); c >= 0; c = arena.nextSibling(c)) {
+            children[i++] = new ArenaNode (arena, c) ;
+        }
+        return children ;
+    }
+
+    // Moving about without making arrays of children
+    ArenaNode firstChild () {
+        int c = arena.firstChild (node) ;
+        return (c < 0) ? null : new ArenaNode (arena, c) ;
+    }
+    ArenaNode nextSibling () {
+        int s = arena.nextSibling (node) ;
+        return (s < 0) ? null : new ArenaNode (arena, s) ;
+    }
+
+    public boolean equals (Object o) {
+        return (o instanceof ArenaNode) && ((ArenaNode)o).arena == arena
+            && ((ArenaNode)o).node == node ;
+    }
+    public int hashCode () {return System.identityHashCode (arena) * 31 + node ;}
+}